@@ -0,0 +1,97 @@
+package benchmarks;
+
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.BrightnessTable;
+import image.Image;
+import image.ImageEditor;
+import image.SubImage;
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks each conversion stage in isolation, on a padded synthetic image: sub-image
+ * extraction, per-tile brightness (directly and through the summed-area table), character
+ * matching, and both outputs writing to a discarding stream.
+ * @author Salah Mahmied
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConversionBenchmarks {
+
+    private static final String FONT_NAME = "Courier New";
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String size;
+
+    @Param({"64", "256"})
+    public int resolution;
+
+    @Param({"10", "95"})
+    public int charsetSize;
+
+    private Image paddedImage;
+    private SubImage[][] subImages;
+    private double[][] brightness;
+    private SubImgCharMatcher charMatcher;
+    private char[][] charMatrix;
+
+    @Setup
+    public void setUp() {
+        int[] dimensions = SyntheticImages.parseSize(size);
+        paddedImage = ImageEditor.padImageDimensions(SyntheticImages.create(dimensions[0], dimensions[1]));
+        subImages = ImageEditor.getSubImages(paddedImage, resolution);
+        brightness = new BrightnessTable(paddedImage).getTileBrightness(resolution);
+        charMatcher = new SubImgCharMatcher(SyntheticImages.charset(charsetSize));
+        charMatrix = matchCharacters();
+    }
+
+    @Benchmark
+    public SubImage[][] getSubImages() {
+        return ImageEditor.getSubImages(paddedImage, resolution);
+    }
+
+    @Benchmark
+    public double[][] subImageBrightness() {
+        double[][] tileBrightness = new double[subImages.length][subImages[0].length];
+        for (int row = 0; row < subImages.length; row++) {
+            for (int column = 0; column < subImages[row].length; column++) {
+                tileBrightness[row][column] = ImageEditor.calculateImageBrightness(subImages[row][column]);
+            }
+        }
+        return tileBrightness;
+    }
+
+    @Benchmark
+    public double[][] tableBrightness() {
+        return new BrightnessTable(paddedImage).getTileBrightness(resolution);
+    }
+
+    @Benchmark
+    public char[][] matchCharacters() {
+        char[][] chars = new char[brightness.length][brightness[0].length];
+        for (int row = 0; row < brightness.length; row++) {
+            for (int column = 0; column < brightness[row].length; column++) {
+                chars[row][column] = charMatcher.getCharByImageBrightness(brightness[row][column]);
+            }
+        }
+        return chars;
+    }
+
+    @Benchmark
+    public void consoleOutput() {
+        new ConsoleAsciiOutput(OutputStream.nullOutputStream(), true).out(charMatrix);
+    }
+
+    @Benchmark
+    public void htmlOutput() {
+        new HtmlAsciiOutput(OutputStream.nullOutputStream(), FONT_NAME, false).out(charMatrix);
+    }
+}
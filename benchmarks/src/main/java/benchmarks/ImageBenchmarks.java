@@ -0,0 +1,45 @@
+package benchmarks;
+
+import image.Image;
+import image.ImageEditor;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the stages that depend only on the image size: decoding and padding.
+ * @author Salah Mahmied
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageBenchmarks {
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String size;
+
+    private Image image;
+    private byte[] encodedImage;
+
+    @Setup
+    public void setUp() throws IOException {
+        int[] dimensions = SyntheticImages.parseSize(size);
+        image = SyntheticImages.create(dimensions[0], dimensions[1]);
+        encodedImage = SyntheticImages.encode(image);
+    }
+
+    @Benchmark
+    public Image decode() throws IOException {
+        return new Image(new ByteArrayInputStream(encodedImage));
+    }
+
+    @Benchmark
+    public Image padImageDimensions() {
+        return ImageEditor.padImageDimensions(image);
+    }
+}
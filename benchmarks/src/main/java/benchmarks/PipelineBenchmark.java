@@ -0,0 +1,58 @@
+package benchmarks;
+
+import ascii_art.AsciiArtAlgorithm;
+import ascii_output.ConsoleAsciiOutput;
+import image.BrightnessCache;
+import image.Image;
+import image.ImageEditor;
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks a whole conversion, from the encoded image to written console output.
+ * Every invocation decodes a new image, so no brightness data is reused between invocations.
+ * @author Salah Mahmied
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String size;
+
+    @Param({"64", "256"})
+    public int resolution;
+
+    @Param({"10", "95"})
+    public int charsetSize;
+
+    private byte[] encodedImage;
+    private SubImgCharMatcher charMatcher;
+    private BrightnessCache brightnessCache;
+
+    @Setup
+    public void setUp() throws IOException {
+        int[] dimensions = SyntheticImages.parseSize(size);
+        encodedImage = SyntheticImages.encode(SyntheticImages.create(dimensions[0], dimensions[1]));
+        charMatcher = new SubImgCharMatcher(SyntheticImages.charset(charsetSize));
+        // Entries are never reused, so the cache only holds the latest image
+        brightnessCache = new BrightnessCache(0);
+    }
+
+    @Benchmark
+    public void endToEnd() throws IOException {
+        Image image = new Image(new ByteArrayInputStream(encodedImage));
+        AsciiArtAlgorithm algorithm = new AsciiArtAlgorithm(charMatcher, ImageEditor.padImageDimensions(image),
+                resolution, brightnessCache);
+        algorithm.run(new ConsoleAsciiOutput(OutputStream.nullOutputStream(), true), null);
+    }
+}
@@ -0,0 +1,96 @@
+package benchmarks;
+
+import image.Image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Builds the synthetic inputs shared by the benchmarks: images of a given size with smooth
+ * gradients plus noise, their encoded form, and charsets of a given size.
+ * @author Salah Mahmied
+ */
+final class SyntheticImages {
+
+    private static final String SIZE_SEPARATOR = "x";
+    private static final String ENCODED_FORMAT = "png";
+    private static final int MIN_PRINTABLE_CHAR = 32;   // ASCII space character
+    private static final int MAX_PRINTABLE_CHAR = 126;  // ASCII tilde character
+    private static final int MAX_CHANNEL_VALUE = 255;
+    private static final int NOISE_RANGE = 32;          // Amplitude of the per-pixel noise
+    private static final int OPAQUE_ALPHA = 0xFF000000;
+    private static final long SEED = 42;
+
+    private SyntheticImages() {}
+
+    /**
+     * Parses a size parameter of the form WIDTHxHEIGHT.
+     * @param size The size parameter, such as 1920x1080
+     * @return The width and the height
+     */
+    static int[] parseSize(String size) {
+        String[] dimensions = size.split(SIZE_SEPARATOR);
+        return new int[] {Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1])};
+    }
+
+    /**
+     * Creates an image with diagonal color gradients and deterministic noise, so brightness
+     * varies across tiles and every charset character is likely to be used.
+     * @param width The image width
+     * @param height The image height
+     * @return The image
+     */
+    static Image create(int width, int height) {
+        Random random = new Random(SEED);
+        int[] pixels = new int[width * height];
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int noise = random.nextInt(NOISE_RANGE) - NOISE_RANGE / 2;
+                int red = clamp(column * MAX_CHANNEL_VALUE / width + noise);
+                int green = clamp(row * MAX_CHANNEL_VALUE / height + noise);
+                int blue = clamp((row + column) * MAX_CHANNEL_VALUE / (width + height) - noise);
+                pixels[row * width + column] = OPAQUE_ALPHA | red << 16 | green << 8 | blue;
+            }
+        }
+        return new Image(pixels, width, height);
+    }
+
+    /**
+     * Encodes an image losslessly, as an uploaded or stored file would hold it.
+     * @param image The image to encode
+     * @return The encoded bytes
+     */
+    static byte[] encode(Image image) throws IOException {
+        BufferedImage bufferedImage = new BufferedImage(image.getWidth(), image.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+        for (int row = 0; row < image.getHeight(); row++) {
+            for (int column = 0; column < image.getWidth(); column++) {
+                bufferedImage.setRGB(column, row, image.getRGB(row, column));
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ImageIO.write(bufferedImage, ENCODED_FORMAT, output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Creates a charset of evenly spaced printable ASCII characters.
+     * @param size The number of characters, between 2 and 95
+     * @return The characters
+     */
+    static char[] charset(int size) {
+        int printableChars = MAX_PRINTABLE_CHAR - MIN_PRINTABLE_CHAR + 1;
+        char[] charset = new char[size];
+        for (int index = 0; index < size; index++) {
+            charset[index] = (char) (MIN_PRINTABLE_CHAR + (long) index * printableChars / size);
+        }
+        return charset;
+    }
+
+    private static int clamp(int channel) {
+        return Math.max(0, Math.min(MAX_CHANNEL_VALUE, channel));
+    }
+}
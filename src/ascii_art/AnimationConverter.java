@@ -0,0 +1,250 @@
+package ascii_art;
+
+import ascii_output.AnimationOutput;
+import image.FrameReader;
+import image.Image;
+import image.ImageEditor;
+import image.TileBrightness;
+import image_char_matching.SubImgCharMatcher;
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Converts an animated GIF, or a directory of numbered frames, into an ASCII animation.
+ * Decoding, brightness-and-matching, and output run as three overlapping stages: a decoder
+ * thread, a converter thread and the calling thread, connected by bounded queues. A fixed set
+ * of frame buffers (pixels, padded image view and characters) circulates through the stages
+ * and back, and the converter reuses one set of row, tile-sum and brightness buffers, so the
+ * steady state allocates no per-frame buffers and memory stays bounded however long the
+ * animation is. In incremental mode the converter keeps the previous frame's pixels, brightness
+ * and characters, and recomputes brightness and characters only for the tiles that changed.
+ * @author Salah Mahmied
+ */
+public class AnimationConverter {
+
+    private static final int QUEUE_CAPACITY = 4;            // Frames waiting between two stages
+    private static final int FRAMES_IN_FLIGHT = 2 * QUEUE_CAPACITY + 3; // Queued plus one per stage
+    private static final String RESOLUTION_EXCEPTION_MESSAGE =
+            "Resolution %d is out of bounds for a %dx%d animation.";
+    private static final String INTERRUPTED_EXCEPTION_MESSAGE = "Interrupted while converting the animation";
+
+    /**
+     * The buffers of one frame, reused for a new frame once the output has written it.
+     */
+    private static final class Frame {
+        private final int[] pixels;
+        private final Image paddedImage;    // A padded view over pixels
+        private final char[][] chars;
+        private int delay;                  // Milliseconds the frame is shown
+
+        private Frame(int width, int height, int resolution) {
+            this.pixels = new int[width * height];
+            this.paddedImage = ImageEditor.padImageDimensions(new Image(pixels, width, height));
+            this.chars = new char[paddedImage.getHeight() / (paddedImage.getWidth() / resolution)][resolution];
+        }
+
+        private Frame() {
+            this.pixels = null;
+            this.paddedImage = null;
+            this.chars = null;
+        }
+    }
+
+    private static final Frame END_OF_ANIMATION = new Frame();  // Passed down the stages after the last frame
+
+    private final String source;            // Path of the GIF or frame directory
+    private final char[] charset;
+    private final int resolution;
+    private final int directoryDelay;       // Delay of each directory frame, in milliseconds
+    private final boolean incremental;      // Whether only changed tiles are recomputed
+    private volatile Exception failure;     // The first failure of a background stage
+
+    /**
+     * Constructs an animation conversion.
+     * @param source Path of an animated GIF or of a directory of numbered frames
+     * @param charset The characters to draw with
+     * @param resolution The resolution (number of sub-images per dimension) for every frame
+     * @param directoryDelay How long each frame of a directory is shown, in milliseconds;
+     *                       GIF frames keep their own delays
+     */
+    public AnimationConverter(String source, char[] charset, int resolution, int directoryDelay) {
+        this(source, charset, resolution, directoryDelay, false);
+    }
+
+    /**
+     * Constructs an animation conversion that can recompute only the tiles each frame changes.
+     * @param source Path of an animated GIF or of a directory of numbered frames
+     * @param charset The characters to draw with
+     * @param resolution The resolution (number of sub-images per dimension) for every frame
+     * @param directoryDelay How long each frame of a directory is shown, in milliseconds;
+     *                       GIF frames keep their own delays
+     * @param incremental Whether to recompute only the tiles that changed since the previous frame
+     */
+    public AnimationConverter(String source, char[] charset, int resolution, int directoryDelay,
+                              boolean incremental) {
+        this.source = source;
+        this.charset = charset.clone();
+        this.resolution = resolution;
+        this.directoryDelay = directoryDelay;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Converts every frame and writes the animation to the output.
+     * @param output The output to write the frames to
+     * @return The number of frames written
+     * @throws IOException If the animation cannot be read, a frame cannot be decoded,
+     *                     or the resolution does not fit the frames
+     */
+    public int run(AnimationOutput output) throws IOException {
+        try (FrameReader reader = new FrameReader(source, directoryDelay)) {
+            int width = reader.getWidth();
+            int height = reader.getHeight();
+            int paddedWidth = ImageEditor.getPaddedDimension(width);
+            int paddedHeight = ImageEditor.getPaddedDimension(height);
+            if (resolution < 1 || resolution > paddedWidth || paddedWidth / resolution > paddedHeight) {
+                throw new IOException(String.format(RESOLUTION_EXCEPTION_MESSAGE, resolution, width, height));
+            }
+
+            BlockingQueue<Frame> free = new ArrayBlockingQueue<>(FRAMES_IN_FLIGHT);
+            BlockingQueue<Frame> decoded = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            BlockingQueue<Frame> converted = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+            for (int index = 0; index < FRAMES_IN_FLIGHT; index++) {
+                free.add(new Frame(width, height, resolution));
+            }
+            TileBrightness tileBrightness = new TileBrightness(paddedWidth, paddedHeight, resolution,
+                    incremental);
+            SubImgCharMatcher charMatcher = new SubImgCharMatcher(charset);
+
+            Thread decoder = new Thread(() -> decode(reader, free, decoded), "animation-decoder");
+            Thread converter = new Thread(() -> convert(tileBrightness, charMatcher, decoded, converted),
+                    "animation-converter");
+            decoder.setDaemon(true);
+            converter.setDaemon(true);
+            decoder.start();
+            converter.start();
+            try {
+                return write(output, converted, free, resolution, paddedHeight / (paddedWidth / resolution));
+            } finally {
+                // Stops the background stages early if the output stage failed
+                decoder.interrupt();
+                converter.interrupt();
+                joinQuietly(decoder);
+                joinQuietly(converter);
+            }
+        }
+    }
+
+    /**
+     * The decoding stage: fills free frames from the reader until the animation ends.
+     */
+    private void decode(FrameReader reader, BlockingQueue<Frame> free, BlockingQueue<Frame> decoded) {
+        try {
+            try {
+                while (true) {
+                    Frame frame = free.take();
+                    if (!reader.readFrame(frame.pixels)) {
+                        break;
+                    }
+                    frame.delay = reader.getFrameDelay();
+                    decoded.put(frame);
+                }
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+            decoded.put(END_OF_ANIMATION);
+        } catch (InterruptedException e) {
+            // The output stage has stopped
+        }
+    }
+
+    /**
+     * The brightness and matching stage: turns each decoded frame's pixels into characters.
+     * Characters are matched into one grid that outlives the frames, so tiles that were not
+     * recomputed keep their previous characters, and the grid is copied into each frame.
+     */
+    private void convert(TileBrightness tileBrightness, SubImgCharMatcher charMatcher,
+                         BlockingQueue<Frame> decoded, BlockingQueue<Frame> converted) {
+        try {
+            try {
+                char[][] currentChars = null;
+                for (Frame frame = decoded.take(); frame != END_OF_ANIMATION; frame = decoded.take()) {
+                    double[][] brightness = tileBrightness.calculate(frame.paddedImage);
+                    boolean[][] changedTiles = tileBrightness.getChangedTiles();
+                    if (currentChars == null) {
+                        currentChars = new char[brightness.length][brightness[0].length];
+                    }
+                    long startTime = Metrics.now();
+                    long matchedTiles = 0;
+                    for (int rowIndex = 0; rowIndex < brightness.length; rowIndex++) {
+                        for (int columnIndex = 0; columnIndex < brightness[rowIndex].length; columnIndex++) {
+                            if (changedTiles[rowIndex][columnIndex]) {
+                                currentChars[rowIndex][columnIndex] = charMatcher.getCharByImageBrightness(
+                                        brightness[rowIndex][columnIndex]);
+                                matchedTiles++;
+                            }
+                        }
+                        System.arraycopy(currentChars[rowIndex], 0, frame.chars[rowIndex], 0,
+                                currentChars[rowIndex].length);
+                    }
+                    Metrics.record(Metrics.Stage.MATCH, startTime);
+                    Metrics.count(Metrics.Counter.CONVERSIONS, 1);
+                    Metrics.count(Metrics.Counter.TILES, matchedTiles);
+                    Metrics.count(Metrics.Counter.PIXELS,
+                            (long) frame.paddedImage.getWidth() * frame.paddedImage.getHeight());
+                    converted.put(frame);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            converted.put(END_OF_ANIMATION);
+        } catch (InterruptedException e) {
+            // The output stage has stopped
+        }
+    }
+
+    /**
+     * The output stage, on the calling thread: writes converted frames in order and returns
+     * their buffers to the decoder.
+     */
+    private int write(AnimationOutput output, BlockingQueue<Frame> converted, BlockingQueue<Frame> free,
+                      int columns, int rows) throws IOException {
+        int frames = 0;
+        try {
+            output.begin(columns, rows);
+            for (Frame frame = converted.take(); frame != END_OF_ANIMATION; frame = converted.take()) {
+                long startTime = Metrics.now();
+                output.frame(frame.chars, frame.delay);
+                Metrics.record(Metrics.Stage.OUTPUT, startTime);
+                frames++;
+                free.put(frame);
+            }
+            output.end();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(INTERRUPTED_EXCEPTION_MESSAGE);
+        }
+        Exception stageFailure = failure;
+        if (stageFailure instanceof IOException) {
+            throw (IOException) stageFailure;
+        }
+        if (stageFailure != null) {
+            throw new IOException(stageFailure.getMessage(), stageFailure);
+        }
+        return frames;
+    }
+
+    /**
+     * Waits for a stage thread to finish, keeping the caller's interrupt status.
+     */
+    private static void joinQuietly(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,26 +1,35 @@
 package ascii_art;
 
+import ascii_output.StreamingAsciiOutput;
+import image.BrightnessCache;
 import image.Image;
 import image.ImageEditor;
+import image.RowBands;
 import image_char_matching.SubImgCharMatcher;
+import metrics.Metrics;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * This class is responsible for converting an image into ASCII art using a given character set and resolution.
- * It utilizes caching to optimize performance when the same image and resolution are used consecutively.
+ * Tile brightness values are kept in a shared {@link BrightnessCache}, so repeated runs on the same image
+ * reuse earlier work for every resolution that is still cached. The brightness, color, matching and
+ * output stages are timed through {@link Metrics}.
  * @author Salah Mahmied
  */
 public class AsciiArtAlgorithm {
 
-    // Static variables for caching previous calculation results
-    private static Image previousPadImage;         // Stores the previously processed padded image
-    private static int previousResolution;         // Stores the previously used resolution
-    private static double[][] previousBrightness;   // Stores brightness values from previous calculation
+    // Brightness grids shared by all instances, keyed by padded image and resolution
+    private static final BrightnessCache SHARED_BRIGHTNESS_CACHE = new BrightnessCache();
+    private static final int BANDS_PER_THREAD = 4;  // Extra bands per thread so output can start early
 
     private final SubImgCharMatcher charMatcher;    // Matches brightness values to characters
     private final Image padImage;                   // The padded input image
     private final int resolution;                   // The current resolution for ASCII art
+    private final BrightnessCache brightnessCache;  // Source of tile brightness values
 
     /**
      * Constructs an AsciiArtAlgorithm instance.
@@ -29,68 +38,182 @@ public class AsciiArtAlgorithm {
      * @param resolution The resolution (number of sub-images per dimension) for the conversion
      */
     public AsciiArtAlgorithm(List<Character> charset, Image image, int resolution) {
+        this(charset, image, resolution, SHARED_BRIGHTNESS_CACHE);
+    }
+
+    /**
+     * Constructs an AsciiArtAlgorithm instance that reads tile brightness from the given cache.
+     * @param charset The list of characters to use for the ASCII art
+     * @param image The input image to convert
+     * @param resolution The resolution (number of sub-images per dimension) for the conversion
+     * @param brightnessCache The cache to read and store tile brightness values in
+     */
+    public AsciiArtAlgorithm(List<Character> charset, Image image, int resolution,
+                             BrightnessCache brightnessCache) {
+        // Pad the image to make its dimensions divisible by the resolution
+        this(createCharMatcher(charset), ImageEditor.padImageDimensions(image), resolution, brightnessCache);
+    }
+
+    /**
+     * Constructs an AsciiArtAlgorithm instance from an existing matcher and an already padded image.
+     * Neither is copied: the matcher is used as is, so pass a snapshot
+     * ({@link SubImgCharMatcher#SubImgCharMatcher(SubImgCharMatcher)}) if it may change during the run.
+     * @param charMatcher The matcher to match brightness values to characters with
+     * @param paddedImage The input image, already padded by {@link ImageEditor#padImageDimensions}
+     * @param resolution The resolution (number of sub-images per dimension) for the conversion
+     */
+    public AsciiArtAlgorithm(SubImgCharMatcher charMatcher, Image paddedImage, int resolution) {
+        this(charMatcher, paddedImage, resolution, SHARED_BRIGHTNESS_CACHE);
+    }
+
+    /**
+     * Constructs an AsciiArtAlgorithm instance from an existing matcher and an already padded
+     * image, reading tile brightness from the given cache.
+     * @param charMatcher The matcher to match brightness values to characters with
+     * @param paddedImage The input image, already padded by {@link ImageEditor#padImageDimensions}
+     * @param resolution The resolution (number of sub-images per dimension) for the conversion
+     * @param brightnessCache The cache to read and store tile brightness values in
+     */
+    public AsciiArtAlgorithm(SubImgCharMatcher charMatcher, Image paddedImage, int resolution,
+                             BrightnessCache brightnessCache) {
+        this.charMatcher = charMatcher;
+        this.padImage = paddedImage;
         this.resolution = resolution;
+        this.brightnessCache = brightnessCache;
+    }
+
+    /**
+     * Runs the ASCII art conversion algorithm.
+     * @return A 2D char array representing the ASCII art
+     */
+    public char[][] run() {
+        return run(null);
+    }
+
+    /**
+     * Runs the ASCII art conversion algorithm, splitting the tile grid into row bands that
+     * are processed on the given pool. The result is identical to the sequential {@link #run()}.
+     * @param pool The pool to run on, or null to run on the calling thread
+     * @return A 2D char array representing the ASCII art
+     */
+    public char[][] run(ForkJoinPool pool) {
+        double[][] brightness = getBrightness(pool);
+        char[][] charMatrix = new char[brightness.length][brightness[0].length];
+        RowBands.forEachBand(pool, brightness.length, (fromRow, toRow) ->
+                matchCharacters(brightness, charMatrix, fromRow, toRow));
+        return charMatrix;
+    }
+
+    /**
+     * Writes one row to the output, with its tile colors when they were computed.
+     */
+    private static void writeRow(StreamingAsciiOutput asciiOutput, char[][] charMatrix, int[][] colors,
+                                 int rowIndex) {
+        long startTime = Metrics.now();
+        long startAllocated = Metrics.allocatedBytes();
+        if (colors != null) {
+            asciiOutput.row(charMatrix[rowIndex], colors[rowIndex], rowIndex);
+        } else {
+            asciiOutput.row(charMatrix[rowIndex], rowIndex);
+        }
+        Metrics.record(Metrics.Stage.OUTPUT, startTime, startAllocated);
+    }
+
+    /**
+     * Builds a matcher for the given list of characters.
+     * @param charset The list of characters to use for the ASCII art
+     * @return A new matcher over the characters
+     */
+    private static SubImgCharMatcher createCharMatcher(List<Character> charset) {
         // Convert List<Character> to char[] for the SubImgCharMatcher
         char[] charsetArray = new char[charset.size()];
         for (int index = 0; index < charsetArray.length; index++) {
             charsetArray[index] = charset.get(index).charValue();
         }
-        this.charMatcher = new SubImgCharMatcher(charsetArray);
-        // Pad the image to make its dimensions divisible by the resolution
-        this.padImage = ImageEditor.padImageDimensions(image);
+        return new SubImgCharMatcher(charsetArray);
     }
 
     /**
-     * Runs the ASCII art conversion algorithm.
-     * @return A 2D char array representing the ASCII art
+     * Runs the ASCII art conversion algorithm and pushes each row of characters to the output
+     * as soon as it is computed. If the output is colored, each row is passed with the average
+     * color of its tiles. With a pool, bands of rows are computed in parallel while the
+     * calling thread writes finished bands in order, so computing and writing overlap.
+     * @param asciiOutput The output to stream the rows to
+     * @param pool The pool to run on, or null to run on the calling thread
      */
-    public char[][] run() {
-        // Split the padded image into sub-images based on the resolution
-        Image[][] subImages = ImageEditor.getSubImages(padImage, resolution);
-        char[][] charMatrix = new char[subImages.length][subImages[0].length];
-
-        // Check if we can use cached results from previous run
-        if (checkPrevious(charMatrix, subImages)) {
-            return charMatrix;
+    public void run(StreamingAsciiOutput asciiOutput, ForkJoinPool pool) {
+        double[][] brightness = getBrightness(pool);
+        char[][] charMatrix = new char[brightness.length][brightness[0].length];
+        int[][] colors = null;
+        if (asciiOutput.isColored()) {
+            long startTime = Metrics.now();
+            long startAllocated = Metrics.allocatedBytes();
+            colors = ImageEditor.calculateAverageColors(this.padImage, this.resolution, pool);
+            Metrics.record(Metrics.Stage.COLOR, startTime, startAllocated);
         }
 
-        // No cache available, perform full calculation
-        previousPadImage = this.padImage;
-        previousResolution = this.resolution;
-        previousBrightness = new double[subImages.length][subImages[0].length];
-
-        // Calculate brightness for each sub-image and find matching character
-        for (int rowIndex = 0; rowIndex < subImages.length; rowIndex++) {
-            for (int columnIndex = 0; columnIndex < subImages[rowIndex].length; columnIndex++) {
-                // Calculate and store brightness
-                previousBrightness[rowIndex][columnIndex] = ImageEditor.calculateImageBrightness(
-                        subImages[rowIndex][columnIndex]);
-                // Find character that best matches the brightness
-                charMatrix[rowIndex][columnIndex] = this.charMatcher.getCharByImageBrightness(
-                        previousBrightness[rowIndex][columnIndex]);
+        long startTime = Metrics.now();
+        long startAllocated = Metrics.allocatedBytes();
+        asciiOutput.begin(brightness[0].length, brightness.length);
+        Metrics.record(Metrics.Stage.OUTPUT, startTime, startAllocated);
+
+        if (pool == null || pool.getParallelism() <= 1) {
+            for (int rowIndex = 0; rowIndex < brightness.length; rowIndex++) {
+                matchCharacters(brightness, charMatrix, rowIndex, rowIndex + 1);
+                writeRow(asciiOutput, charMatrix, colors, rowIndex);
+            }
+        } else {
+            int bandSize = Math.max(1, brightness.length / (pool.getParallelism() * BANDS_PER_THREAD));
+            List<ForkJoinTask<?>> bands = new ArrayList<>();
+            for (int fromRow = 0; fromRow < brightness.length; fromRow += bandSize) {
+                int bandStart = fromRow;
+                int bandEnd = Math.min(brightness.length, fromRow + bandSize);
+                bands.add(pool.submit(() -> matchCharacters(brightness, charMatrix, bandStart, bandEnd)));
+            }
+            for (int bandIndex = 0; bandIndex < bands.size(); bandIndex++) {
+                bands.get(bandIndex).join();
+                int bandEnd = Math.min(brightness.length, (bandIndex + 1) * bandSize);
+                for (int rowIndex = bandIndex * bandSize; rowIndex < bandEnd; rowIndex++) {
+                    writeRow(asciiOutput, charMatrix, colors, rowIndex);
+                }
             }
         }
-        return charMatrix;
+        startTime = Metrics.now();
+        startAllocated = Metrics.allocatedBytes();
+        asciiOutput.end();
+        Metrics.record(Metrics.Stage.OUTPUT, startTime, startAllocated);
     }
 
     /**
-     * Checks if the current image and resolution match the previous run to use cached brightness values.
-     * @param charMatrix The character matrix to populate if cache is available
-     * @param subImages The array of sub-images (used for dimensions)
-     * @return true if cache was used, false otherwise
+     * Gets the brightness of every tile, timing the lookup and counting the conversion.
      */
-    private boolean checkPrevious(char[][] charMatrix, Image[][] subImages) {
-        // Check if the current parameters match the previous run
-        if (this.padImage.equals(previousPadImage) && this.resolution == previousResolution) {
-            // Use cached brightness values to populate the character matrix
-            for (int rowIndex = 0; rowIndex < subImages.length; rowIndex++) {
-                for (int columnIndex = 0; columnIndex < subImages[rowIndex].length; columnIndex++) {
-                    charMatrix[rowIndex][columnIndex] = this.charMatcher.getCharByImageBrightness(
-                            previousBrightness[rowIndex][columnIndex]);
-                }
+    private double[][] getBrightness(ForkJoinPool pool) {
+        long startTime = Metrics.now();
+        long startAllocated = Metrics.allocatedBytes();
+        double[][] brightness = this.brightnessCache.getBrightness(this.padImage, this.resolution, pool);
+        Metrics.record(Metrics.Stage.BRIGHTNESS, startTime, startAllocated);
+        Metrics.count(Metrics.Counter.CONVERSIONS, 1);
+        Metrics.count(Metrics.Counter.TILES, (long) brightness.length * brightness[0].length);
+        Metrics.count(Metrics.Counter.PIXELS, (long) this.padImage.getWidth() * this.padImage.getHeight());
+        return brightness;
+    }
+
+    /**
+     * Finds the character that best matches the brightness of each sub-image in a band of rows.
+     * @param brightness The brightness values of the sub-images
+     * @param charMatrix The character matrix to populate
+     * @param fromRow The first row to match, inclusive
+     * @param toRow The last row to match, exclusive
+     */
+    private void matchCharacters(double[][] brightness, char[][] charMatrix, int fromRow, int toRow) {
+        long startTime = Metrics.now();
+        long startAllocated = Metrics.allocatedBytes();
+        for (int rowIndex = fromRow; rowIndex < toRow; rowIndex++) {
+            for (int columnIndex = 0; columnIndex < brightness[rowIndex].length; columnIndex++) {
+                charMatrix[rowIndex][columnIndex] = this.charMatcher.getCharByImageBrightness(
+                        brightness[rowIndex][columnIndex]);
             }
-            return true;
         }
-        return false;
+        Metrics.record(Metrics.Stage.MATCH, startTime, startAllocated);
     }
 }
@@ -0,0 +1,234 @@
+package ascii_art;
+
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.StreamingAsciiOutput;
+import image.BrightnessCache;
+import image.Image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.stream.ImageInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts every image in a directory, or every file matching a glob, without user interaction.
+ * Images flow through three stages, each on its own bounded worker pool: decoding, conversion,
+ * and writing, so one image is decoded while another is converted and a third is written.
+ * Every pool's queue is bounded, and when a queue is full the thread handing an image on runs
+ * the next stage itself, so at most 3 * (threads + queue capacity) images are ever in flight.
+ * All conversions go through one {@link ConversionEngine}, so the character matcher is built
+ * once per batch. Only images whose output was written count as converted.
+ * @author Salah Mahmied
+ */
+public class BatchConverter {
+
+    private static final String HTML_OUTPUT = "html";
+    private static final String HTML_EXTENSION = ".html";
+    private static final String CONSOLE_EXTENSION = ".txt";
+    private static final String FONT_NAME = "Courier New";
+    private static final String GLOB_CHARACTERS = "*?[{";
+    private static final int QUEUED_TASKS_PER_THREAD = 2;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double PIXELS_PER_MEGAPIXEL = 1e6;
+    private static final String FILE_REPORT_FORMAT =
+            "%s: decode %.1f ms, convert %.1f ms, write %.1f ms, total %.1f ms%n";
+    private static final String FILE_ERROR_FORMAT = "%s: failed: %s%n";
+    private static final String SUMMARY_FORMAT =
+            "Converted %d of %d images in %.2f s (%.2f images/s, %.2f megapixels/s)%n";
+
+    private final String source;                // Directory or glob of the images to convert
+    private final char[] charset;
+    private final int resolution;
+    private final String outputType;
+    private final int threads;
+    private final AtomicInteger converted = new AtomicInteger();
+    private final AtomicLong convertedPixels = new AtomicLong();
+    private ConversionEngine engine;
+    private ThreadPoolExecutor converters;
+    private ThreadPoolExecutor writers;
+
+    /**
+     * One image on its way through the stages, with the time each stage took.
+     */
+    private static final class BatchItem {
+        private final Path imagePath;
+        private Image image;                // Dropped once converted
+        private long pixels;
+        private char[][] charMatrix;
+        private long decodeNanos;
+        private long convertNanos;
+
+        private BatchItem(Path imagePath) {
+            this.imagePath = imagePath;
+        }
+    }
+
+    /**
+     * Constructs a batch conversion.
+     * @param source A directory or a glob such as images/*.jpg; only files ImageIO can read
+     *               are converted
+     * @param charset The characters to draw with
+     * @param resolution The resolution (number of sub-images per dimension) for every image
+     * @param outputType console for text files, html for HTML files, written next to each image
+     * @param threads The number of worker threads of each stage
+     */
+    public BatchConverter(String source, char[] charset, int resolution,
+                          String outputType, int threads) {
+        this.source = source;
+        this.charset = charset.clone();
+        this.resolution = resolution;
+        this.outputType = outputType;
+        this.threads = threads;
+    }
+
+    /**
+     * Converts every image and prints a timing line per file and a throughput summary.
+     * @throws IOException If the source directory or glob cannot be listed
+     */
+    public void run() throws IOException {
+        List<Path> images = listImages();
+        // Images are converted once each, so brightness data is not kept beyond the latest entry
+        engine = new ConversionEngine(new ConversionStore(new BrightnessCache(0)));
+        ThreadPoolExecutor decoders = createStage();
+        converters = createStage();
+        writers = createStage();
+        converted.set(0);
+        convertedPixels.set(0);
+
+        long start = System.nanoTime();
+        for (Path imagePath : images) {
+            decoders.execute(() -> decode(new BatchItem(imagePath)));
+        }
+        // Each stage hands images to the next, so stages are shut down in pipeline order
+        awaitStage(decoders);
+        awaitStage(converters);
+        awaitStage(writers);
+        double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+
+        System.out.printf(SUMMARY_FORMAT, converted.get(), images.size(), seconds,
+                converted.get() / seconds, convertedPixels.get() / PIXELS_PER_MEGAPIXEL / seconds);
+    }
+
+    private ThreadPoolExecutor createStage() {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * QUEUED_TASKS_PER_THREAD),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static void awaitStage(ThreadPoolExecutor stage) {
+        stage.shutdown();
+        try {
+            stage.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void decode(BatchItem item) {
+        try {
+            long start = System.nanoTime();
+            item.image = new Image(item.imagePath.toString());
+            item.pixels = (long) item.image.getWidth() * item.image.getHeight();
+            item.decodeNanos = System.nanoTime() - start;
+        } catch (IOException | RuntimeException e) {
+            System.out.printf(FILE_ERROR_FORMAT, item.imagePath, e.getMessage());
+            return;
+        }
+        converters.execute(() -> convert(item));
+    }
+
+    private void convert(BatchItem item) {
+        try {
+            long start = System.nanoTime();
+            item.charMatrix = engine.convert(new ConversionRequest(item.image, charset, resolution));
+            item.convertNanos = System.nanoTime() - start;
+        } catch (RuntimeException e) {
+            System.out.printf(FILE_ERROR_FORMAT, item.imagePath, e.getMessage());
+            return;
+        }
+        item.image = null;
+        writers.execute(() -> write(item));
+    }
+
+    /**
+     * Writes one image's output next to it, prints its timings and counts it as converted.
+     * The output is rendered in memory and written in one call, so a failed write surfaces
+     * as an exception rather than a logged, partly written file.
+     */
+    private void write(BatchItem item) {
+        try {
+            long start = System.nanoTime();
+            ByteArrayOutputStream rendered = new ByteArrayOutputStream();
+            StreamingAsciiOutput asciiOutput = outputType.equals(HTML_OUTPUT) ?
+                    new HtmlAsciiOutput(rendered, FONT_NAME, false) : new ConsoleAsciiOutput(rendered, true);
+            asciiOutput.out(item.charMatrix);
+            String extension = outputType.equals(HTML_OUTPUT) ? HTML_EXTENSION : CONSOLE_EXTENSION;
+            Files.write(Paths.get(item.imagePath + extension), rendered.toByteArray());
+            long writeNanos = System.nanoTime() - start;
+
+            System.out.printf(FILE_REPORT_FORMAT, item.imagePath, item.decodeNanos / NANOS_PER_MILLI,
+                    item.convertNanos / NANOS_PER_MILLI, writeNanos / NANOS_PER_MILLI,
+                    (item.decodeNanos + item.convertNanos + writeNanos) / NANOS_PER_MILLI);
+            converted.incrementAndGet();
+            convertedPixels.addAndGet(item.pixels);
+        } catch (IOException | RuntimeException e) {
+            System.out.printf(FILE_ERROR_FORMAT, item.imagePath, e.getMessage());
+        }
+    }
+
+    /**
+     * Lists the images to convert: the files of a directory, or the files matching a glob in its
+     * last path component, that ImageIO has a reader for. Results are sorted by name.
+     */
+    private List<Path> listImages() throws IOException {
+        Path sourcePath = Paths.get(source);
+        Path directory;
+        String glob;
+        if (Files.isDirectory(sourcePath)) {
+            directory = sourcePath;
+            glob = null;
+        } else {
+            directory = sourcePath.toAbsolutePath().getParent();
+            glob = sourcePath.getFileName().toString();
+            for (char globCharacter : GLOB_CHARACTERS.toCharArray()) {
+                if (directory.toString().indexOf(globCharacter) >= 0) {
+                    throw new IOException("Glob characters are only supported in the file name: " + source);
+                }
+            }
+        }
+
+        List<Path> images = new ArrayList<>();
+        try (DirectoryStream<Path> entries = glob == null ?
+                Files.newDirectoryStream(directory) : Files.newDirectoryStream(directory, glob)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry) && isReadableImage(entry)) {
+                    images.add(entry);
+                }
+            }
+        }
+        Collections.sort(images);
+        return images;
+    }
+
+    /**
+     * Checks whether ImageIO has a reader for the file's content, reading only its header.
+     * Files that cannot be opened are left in, so their error is reported with the others.
+     */
+    private static boolean isReadableImage(Path path) {
+        try (ImageInputStream input = ImageIO.createImageInputStream(path.toFile())) {
+            return input == null || ImageIO.getImageReaders(input).hasNext();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package ascii_art;
+
+import ascii_output.StreamingAsciiOutput;
+import image.Image;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts {@link ConversionRequest}s to ASCII art. The engine holds no state of its own
+ * besides the injected {@link ConversionStore}, so one engine can serve any number of threads
+ * at once, and conversions sharing a store reuse each other's padded images, matchers and
+ * tile brightness values.
+ * @author Salah Mahmied
+ */
+public class ConversionEngine {
+
+    private final ConversionStore store;
+
+    /**
+     * Constructs an engine over the given store.
+     * @param store The caches to read and fill during conversions
+     */
+    public ConversionEngine(ConversionStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Converts a request on the calling thread.
+     * @param request The conversion to run
+     * @return A 2D char array representing the ASCII art
+     * @throws IllegalArgumentException If the resolution is out of bounds for the image
+     */
+    public char[][] convert(ConversionRequest request) {
+        return convert(request, (ForkJoinPool) null);
+    }
+
+    /**
+     * Converts a request, splitting the work into row bands on the given pool.
+     * @param request The conversion to run
+     * @param pool The pool to run on, or null to run on the calling thread
+     * @return A 2D char array representing the ASCII art
+     * @throws IllegalArgumentException If the resolution is out of bounds for the image
+     */
+    public char[][] convert(ConversionRequest request, ForkJoinPool pool) {
+        return createAlgorithm(request).run(pool);
+    }
+
+    /**
+     * Converts a request and streams each row to the output as soon as it is computed.
+     * @param request The conversion to run
+     * @param asciiOutput The output to stream the rows to
+     * @param pool The pool to run on, or null to run on the calling thread
+     * @throws IllegalArgumentException If the resolution is out of bounds for the image
+     */
+    public void convert(ConversionRequest request, StreamingAsciiOutput asciiOutput, ForkJoinPool pool) {
+        createAlgorithm(request).run(asciiOutput, pool);
+    }
+
+    /**
+     * Builds a single-use algorithm from the request and the store's shared data.
+     */
+    private AsciiArtAlgorithm createAlgorithm(ConversionRequest request) {
+        Image paddedImage = store.getPaddedImage(request.getImage());
+        int resolution = request.getResolution();
+        if (resolution > paddedImage.getWidth() || paddedImage.getWidth() / resolution > paddedImage.getHeight()) {
+            throw new IllegalArgumentException(String.format("Resolution %d is out of bounds for a %dx%d image.",
+                    resolution, request.getImage().getWidth(), request.getImage().getHeight()));
+        }
+        return new AsciiArtAlgorithm(store.getCharMatcher(request.getCharset()),
+                paddedImage, resolution, store.getBrightnessCache());
+    }
+}
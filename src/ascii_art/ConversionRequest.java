@@ -0,0 +1,72 @@
+package ascii_art;
+
+import image.Image;
+
+import java.util.Arrays;
+
+/**
+ * An immutable description of one ASCII art conversion: the source image, a snapshot of the
+ * charset and the resolution. Requests can be shared freely between
+ * threads and reused for any number of conversions.
+ * @author Salah Mahmied
+ */
+public final class ConversionRequest {
+
+    private static final int MIN_CHARSET_SIZE = 2;
+
+    private final Image image;          // The source image, before padding
+    private final char[] charset;       // Distinct characters, sorted by ASCII value
+    private final int resolution;       // Number of characters per row of ASCII art
+
+    /**
+     * Constructs a request.
+     * @param image The image to convert
+     * @param charset The characters to draw with; copied, so later changes have no effect
+     * @param resolution The number of characters per row of ASCII art
+     * @throws IllegalArgumentException If the charset has fewer than 2 distinct characters or
+     *                                  the resolution is not positive
+     */
+    public ConversionRequest(Image image, char[] charset, int resolution) {
+        char[] sortedCharset = charset.clone();
+        Arrays.sort(sortedCharset);
+        int distinct = 0;
+        for (char character : sortedCharset) {
+            if (distinct == 0 || sortedCharset[distinct - 1] != character) {
+                sortedCharset[distinct++] = character;
+            }
+        }
+        if (distinct < MIN_CHARSET_SIZE) {
+            throw new IllegalArgumentException("Charset is too small.");
+        }
+        if (resolution < 1) {
+            throw new IllegalArgumentException("Resolution must be positive.");
+        }
+        this.image = image;
+        this.charset = Arrays.copyOf(sortedCharset, distinct);
+        this.resolution = resolution;
+    }
+
+    /**
+     * Gets the image to convert.
+     * @return The source image, before padding
+     */
+    public Image getImage() {
+        return image;
+    }
+
+    /**
+     * Gets the charset snapshot.
+     * @return A copy of the distinct characters, sorted by ASCII value
+     */
+    public char[] getCharset() {
+        return charset.clone();
+    }
+
+    /**
+     * Gets the resolution.
+     * @return The number of characters per row of ASCII art
+     */
+    public int getResolution() {
+        return resolution;
+    }
+}
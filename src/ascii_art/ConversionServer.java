@@ -0,0 +1,253 @@
+package ascii_art;
+
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import ascii_output.StreamingAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * A local HTTP service that converts uploaded images to ASCII art.
+ * A POST to /convert carries the encoded image as its body and the conversion settings as
+ * query parameters: resolution, output (console or html), charset ("all", a range such as
+ * "a-z", or literal characters) and color (true for colored HTML). The response is the
+ * console text or the HTML document.
+ * Every request is handled on its own thread: a virtual thread when the runtime provides
+ * them, otherwise a thread of a bounded platform pool with one thread per conversion; when
+ * that pool's queue is full, the accepting thread handles the exchange itself. Decoding and
+ * conversion are limited to one request per core at a time, so thousands of open connections
+ * only wait instead of competing for memory. Uploads larger than 64 MB are rejected.
+ * Conversions run on a {@link ConversionEngine} over the server's {@link ConversionStore}, so
+ * character matchers are shared between requests, uploads of the same image bytes share one
+ * decoded image and its brightness values, and glyphs come from the process-wide glyph cache.
+ * @author Salah Mahmied
+ */
+public class ConversionServer {
+
+    private static final String CONVERT_PATH = "/convert";
+    private static final String POST_METHOD = "POST";
+    private static final String RESOLUTION_PARAMETER = "resolution";
+    private static final String OUTPUT_PARAMETER = "output";
+    private static final String CHARSET_PARAMETER = "charset";
+    private static final String COLOR_PARAMETER = "color";
+    private static final String HTML_OUTPUT = "html";
+    private static final String CONSOLE_OUTPUT = "console";
+    private static final String DEFAULT_CHARSET = "0-9";
+    private static final String DEFAULT_RESOLUTION = "2";
+    private static final String FONT_NAME = "Courier New";
+    private static final String TEXT_CONTENT_TYPE = "text/plain; charset=UTF-8";
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=UTF-8";
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+    private static final String QUERY_SEPARATOR = "&";
+    private static final String VALUE_SEPARATOR = "=";
+    private static final int STATUS_OK = 200;
+    private static final int STATUS_BAD_REQUEST = 400;
+    private static final int STATUS_METHOD_NOT_ALLOWED = 405;
+    private static final int STATUS_PAYLOAD_TOO_LARGE = 413;
+    private static final int STATUS_SERVER_ERROR = 500;
+    private static final int NO_RESPONSE_CODE = -1;         // Response code before headers are sent
+    private static final int CONNECTION_BACKLOG = 4096;     // Pending connections the socket accepts
+    private static final int MAX_UPLOAD_BYTES = 64 * 1024 * 1024;   // Largest accepted request body
+    private static final int QUEUED_TASKS_PER_THREAD = 2;   // Of the platform thread pool
+    private static final String VIRTUAL_EXECUTOR_METHOD = "newVirtualThreadPerTaskExecutor";
+
+    private final HttpServer server;
+    private final ExecutorService executor;                 // Runs one task per exchange
+    private final ConversionStore store;                    // Decoded images shared by content
+    private final ConversionEngine engine;                  // Shared by every request of this server
+    private final Semaphore conversionPermits;              // Bounds simultaneous conversions
+
+    /**
+     * Constructs a server on the loopback interface with its own store and one conversion
+     * per available core.
+     * @param port The port to listen on, or 0 for any free port
+     * @throws IOException If the port cannot be bound
+     */
+    public ConversionServer(int port) throws IOException {
+        this(port, new ConversionStore(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a server on the loopback interface.
+     * @param port The port to listen on, or 0 for any free port
+     * @param store The caches shared by the server's conversions
+     * @param maxConversions The number of conversions that may run at the same time
+     * @throws IOException If the port cannot be bound
+     */
+    public ConversionServer(int port, ConversionStore store, int maxConversions) throws IOException {
+        this.store = store;
+        this.engine = new ConversionEngine(store);
+        this.conversionPermits = new Semaphore(maxConversions);
+        this.executor = createExecutor(maxConversions);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                CONNECTION_BACKLOG);
+        this.server.createContext(CONVERT_PATH, this::handle);
+        this.server.setExecutor(executor);
+    }
+
+    /**
+     * Starts accepting requests in the background.
+     */
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to the given delay for open exchanges to finish,
+     * and releases the request threads.
+     * @param delaySeconds The maximum time to wait for open exchanges, in seconds
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     * @return The bound port
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Handles one conversion request and always sends a response.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals(POST_METHOD)) {
+                sendText(exchange, STATUS_METHOD_NOT_ALLOWED, "Use POST with the image as the request body.");
+                return;
+            }
+            Map<String, String> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            String outputType = parameters.getOrDefault(OUTPUT_PARAMETER, CONSOLE_OUTPUT);
+            if (!outputType.equals(CONSOLE_OUTPUT) && !outputType.equals(HTML_OUTPUT)) {
+                sendText(exchange, STATUS_BAD_REQUEST, "Unknown output: " + outputType);
+                return;
+            }
+
+            byte[] body;
+            try {
+                int resolution = Integer.parseInt(parameters.getOrDefault(RESOLUTION_PARAMETER,
+                        DEFAULT_RESOLUTION));
+                char[] charset = Shell.parseCharset(parameters.getOrDefault(CHARSET_PARAMETER, DEFAULT_CHARSET));
+                boolean colored = Boolean.parseBoolean(parameters.get(COLOR_PARAMETER));
+                body = convert(exchange.getRequestBody(), charset, resolution, outputType, colored);
+            } catch (IOException | IllegalArgumentException e) {
+                sendText(exchange, STATUS_BAD_REQUEST, e.getMessage());
+                return;
+            }
+            if (body == null) {
+                sendText(exchange, STATUS_PAYLOAD_TOO_LARGE, "The image must not exceed " +
+                        MAX_UPLOAD_BYTES + " bytes.");
+                return;
+            }
+            exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER,
+                    outputType.equals(HTML_OUTPUT) ? HTML_CONTENT_TYPE : TEXT_CONTENT_TYPE);
+            exchange.sendResponseHeaders(STATUS_OK, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (RuntimeException e) {
+            Logger.getGlobal().severe("Conversion request failed: " + e);
+            // Once headers are out a status can no longer be sent; closing ends the response
+            if (exchange.getResponseCode() == NO_RESPONSE_CODE) {
+                sendText(exchange, STATUS_SERVER_ERROR, "Conversion failed.");
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Reads, decodes and converts one image, holding a conversion permit meanwhile.
+     * At most one byte more than the upload limit is read from the body.
+     * @return The encoded console text or HTML document, or null if the upload is too large
+     */
+    private byte[] convert(InputStream input, char[] charset, int resolution,
+                           String outputType, boolean colored) throws IOException {
+        try {
+            conversionPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting to convert");
+        }
+        try {
+            byte[] upload = input.readNBytes(MAX_UPLOAD_BYTES + 1);
+            if (upload.length > MAX_UPLOAD_BYTES) {
+                return null;
+            }
+            // Images are shared by content, so a repeated upload reuses its brightness values
+            ConversionRequest request = new ConversionRequest(store.getImage(upload), charset, resolution);
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            StreamingAsciiOutput asciiOutput = outputType.equals(HTML_OUTPUT) ?
+                    new HtmlAsciiOutput(output, FONT_NAME, colored) : new ConsoleAsciiOutput(output, true);
+            engine.convert(request, asciiOutput, null);
+            return output.toByteArray();
+        } finally {
+            conversionPermits.release();
+        }
+    }
+
+    /**
+     * Splits a raw query string into decoded parameters; later duplicates win.
+     */
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split(QUERY_SEPARATOR)) {
+            int separator = pair.indexOf(VALUE_SEPARATOR);
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Sends a plain text response.
+     */
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set(CONTENT_TYPE_HEADER, TEXT_CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    /**
+     * Creates a virtual-thread-per-task executor when the runtime has one (Java 21 and later),
+     * and otherwise a fixed pool of platform threads with a bounded queue, whose submitting
+     * thread runs the exchange itself when the queue is full.
+     * @param threads The number of platform threads
+     */
+    private static ExecutorService createExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod(VIRTUAL_EXECUTOR_METHOD).invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(threads * QUEUED_TASKS_PER_THREAD),
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ascii_art;
+
+import image.BrightnessCache;
+import image.Image;
+import image.ImageEditor;
+import image.LumaCache;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The caches behind a {@link ConversionEngine}, safe for concurrent use.
+ * It keeps padded images (weakly keyed by source image identity), the most recently used
+ * character matchers per charset, and tile brightness values in a {@link BrightnessCache}.
+ * Since the padded images and brightness values are keyed by image identity, the store also
+ * keeps recently decoded images keyed by the content hash of their encoded bytes, so the same
+ * upload decodes to the same image and reuses its brightness values. Matchers and images handed
+ * out by the store are shared and must not be modified.
+ * @author Salah Mahmied
+ */
+public class ConversionStore {
+
+    private static final int MAX_CHAR_MATCHERS = 64;    // Distinct charsets kept at once
+    private static final long MAX_IMAGE_BYTES = 256L * 1024 * 1024;  // Decoded pixels kept by content
+
+    private final BrightnessCache brightnessCache;
+    private final Map<Image, Image> paddedImages = Collections.synchronizedMap(new WeakHashMap<>());
+    private final Map<String, SubImgCharMatcher> charMatchers = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, SubImgCharMatcher> eldest) {
+                    return size() > MAX_CHAR_MATCHERS;
+                }
+            });
+    private final LinkedHashMap<String, Image> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long imageBytes;        // Decoded pixel bytes of the images, guarded by images
+
+    /**
+     * Constructs a store with a brightness cache of the default size.
+     */
+    public ConversionStore() {
+        this(new BrightnessCache());
+    }
+
+    /**
+     * Constructs a store around the given brightness cache.
+     * @param brightnessCache The cache to read and store tile brightness values in
+     */
+    public ConversionStore(BrightnessCache brightnessCache) {
+        this.brightnessCache = brightnessCache;
+    }
+
+    /**
+     * Gets the brightness cache of this store.
+     * @return The brightness cache
+     */
+    public BrightnessCache getBrightnessCache() {
+        return brightnessCache;
+    }
+
+    /**
+     * Gets the image encoded by the given bytes, decoding it on a miss. Images are keyed by
+     * content, so every request carrying the same bytes gets the same image, and with it the
+     * cached padded image and brightness values. Least recently used images are dropped once
+     * their pixels exceed the cap. Concurrent misses for the same bytes may decode twice;
+     * the first result is kept and returned to both.
+     * @param content The encoded image
+     * @return The shared decoded image
+     * @throws IOException If the bytes are not a valid image
+     */
+    public Image getImage(byte[] content) throws IOException {
+        String key = LumaCache.contentHash(content);
+        synchronized (images) {
+            Image image = images.get(key);
+            if (image != null) {
+                return image;
+            }
+        }
+        Image image = new Image(new ByteArrayInputStream(content));
+        synchronized (images) {
+            Image existing = images.putIfAbsent(key, image);
+            if (existing != null) {
+                return existing;
+            }
+            imageBytes += getPixelBytes(image);
+            Iterator<Image> iterator = images.values().iterator();
+            while (imageBytes > MAX_IMAGE_BYTES && iterator.hasNext()) {
+                Image eldest = iterator.next();
+                if (eldest != image) {
+                    imageBytes -= getPixelBytes(eldest);
+                    iterator.remove();
+                }
+            }
+        }
+        return image;
+    }
+
+    private static long getPixelBytes(Image image) {
+        return (long) image.getWidth() * image.getHeight() * Integer.BYTES;
+    }
+
+    /**
+     * Gets the image padded by {@link ImageEditor#padImageDimensions}, padding it on a miss.
+     * Concurrent misses for the same image may pad it twice; either result is kept.
+     * @param image The source image
+     * @return The padded image
+     */
+    public Image getPaddedImage(Image image) {
+        Image paddedImage = paddedImages.get(image);
+        if (paddedImage == null) {
+            paddedImage = ImageEditor.padImageDimensions(image);
+            // An image that needs no padding would keep its own weak key alive
+            if (paddedImage != image) {
+                paddedImages.put(image, paddedImage);
+            }
+        }
+        return paddedImage;
+    }
+
+    /**
+     * Gets a matcher for the charset, building it on a miss. The least recently used matcher
+     * is dropped once more charsets than the cap are kept. Concurrent misses for the same
+     * charset may build it twice; the first result is kept and returned to both.
+     * The matcher is shared between callers and must not be modified.
+     * @param charset The characters of the matcher
+     * @return The shared matcher
+     */
+    public SubImgCharMatcher getCharMatcher(char[] charset) {
+        String key = new String(charset);
+        SubImgCharMatcher charMatcher = charMatchers.get(key);
+        if (charMatcher != null) {
+            return charMatcher;
+        }
+        // Built outside the lock, so a slow miss does not hold up hits on other charsets
+        SubImgCharMatcher newMatcher = new SubImgCharMatcher(charset);
+        SubImgCharMatcher existing = charMatchers.putIfAbsent(key, newMatcher);
+        return existing != null ? existing : newMatcher;
+    }
+
+    /**
+     * Removes every cached entry.
+     */
+    public void clear() {
+        synchronized (images) {
+            images.clear();
+            imageBytes = 0;
+        }
+        paddedImages.clear();
+        charMatchers.clear();
+        brightnessCache.clear();
+    }
+}
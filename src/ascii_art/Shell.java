@@ -1,13 +1,21 @@
 package ascii_art;
 
-import ascii_output.AsciiOutput;
+import ascii_output.AnimationOutput;
 import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAnimationOutput;
 import ascii_output.HtmlAsciiOutput;
+import ascii_output.StreamingAsciiOutput;
+import ascii_output.TerminalAnimationOutput;
 import image.Image;
 import image.ImageEditor;
+import image.LumaCache;
 import image_char_matching.SubImgCharMatcher;
+import metrics.Metrics;
 
 import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * The Shell class provides an interactive command-line interface for converting images to ASCII art.
@@ -44,6 +52,10 @@ public class Shell {
     private static final int ADD_ONE_CHAR_COMMAND_LENGTH = 1;
     private static final int ADD_ONE_CHAR_COMMAND_INDEX = 0;
     private static final int IMAGE_NAME_INDEX = 0;
+    private static final int MAX_RESOLUTION_INDEX = 1;
+    private static final String MAX_RESOLUTION_USAGE_MESSAGE = "Usage: <image> [max resolution]";
+    private static final String SUBSAMPLED_IMAGE_FORMAT =
+            "Decoded at %dx%d, keeping 1 in %d pixels per direction, for resolutions up to %d";
     private static final String ADD_COMMAND_EXCEPTION_MESSAGE = "Did not add due to incorrect format.";
     private static final String RESOLUTION_COMMAND_OUTPUT_FORMAT = "Resolution set to %d";
     private static final String REMOVE_COMMAND_EXCEPTION_MESSAGE = "Did not remove due to incorrect format.";
@@ -69,6 +81,67 @@ public class Shell {
     private static final String ROUND_UP = "up";
     private static final String ROUND_DOWN = "down";
     private static final String HTML_FILENAME = "out.html";
+    private static final String HTML_GZIP_FILENAME = "out.html.gz";
+    private static final String GZIP_COMMAND = "gzip";
+    private static final String COLOR_COMMAND = "color";
+    private static final int HTML_OPTIONS_INDEX = 2;
+    private static final String THREADS_COMMAND = "threads";
+    private static final String MATCH_COMMAND = "match";
+    private static final String MATCH_EXACT = "exact";
+    private static final String MATCH_LOOKUP_TABLE = "lut";
+    private static final String MATCH_INCORRECT_FORMAT_EXCEPTION_MESSAGE =
+            "Did not change matching method due to incorrect format.";
+    private static final String THREADS_COMMAND_OUTPUT_FORMAT = "Threads set to %d";
+    private static final String THREADS_CURRENT_OUTPUT_FORMAT = "Threads are %d";
+    private static final String THREADS_INCORRECT_FORMAT_EXCEPTION_MESSAGE =
+            "Did not change threads due to incorrect format.";
+    private static final int DEFAULT_THREADS = 1;
+    private static final int MAX_THREADS = 256;
+    private static final String STREAM_FLAG = "--stream";
+    private static final int STREAM_IMAGE_INDEX = 1;
+    private static final int STREAM_RESOLUTION_INDEX = 2;
+    private static final int STREAM_OUTPUT_INDEX = 3;
+    private static final int STREAM_SAMPLE_STEP_INDEX = 4;
+    private static final String STREAM_USAGE_MESSAGE =
+            "Usage: --stream <image> <resolution> [console|html] [sample step]";
+    private static final String BATCH_FLAG = "--batch";
+    private static final int BATCH_SOURCE_INDEX = 1;
+    private static final int BATCH_RESOLUTION_INDEX = 2;
+    private static final int BATCH_OUTPUT_INDEX = 3;
+    private static final int BATCH_CHARSET_INDEX = 4;
+    private static final int BATCH_THREADS_INDEX = 5;
+    private static final String BATCH_USAGE_MESSAGE =
+            "Usage: --batch <directory|glob> <resolution> <console|html> [charset|all|a-z] [threads]";
+    private static final String SERVE_FLAG = "--serve";
+    private static final int SERVE_PORT_INDEX = 1;
+    private static final String SERVE_USAGE_MESSAGE = "Usage: --serve <port>";
+    private static final String SERVE_STARTED_FORMAT = "Serving on http://localhost:%d/convert";
+    private static final String ANIMATE_FLAG = "--animate";
+    private static final int ANIMATE_SOURCE_INDEX = 1;
+    private static final int ANIMATE_RESOLUTION_INDEX = 2;
+    private static final int ANIMATE_OUTPUT_INDEX = 3;
+    private static final int ANIMATE_CHARSET_INDEX = 4;
+    private static final int ANIMATE_FPS_INDEX = 5;
+    private static final int DEFAULT_FRAMES_PER_SECOND = 10;   // Frame rate of a frame directory
+    private static final int MILLIS_PER_SECOND = 1000;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final String ANIMATE_USAGE_MESSAGE =
+            "Usage: --animate <gif|directory> <resolution> <console|delta|html> [charset|all|a-z] " +
+            "[frames per second]";
+    private static final String DELTA_COMMAND = "delta";
+    private static final String ANIMATE_SUMMARY_FORMAT = "Converted %d frames in %.2f s (%.1f frames/s)%n";
+    private static final String STATS_COMMAND = "stats";
+    private static final String STATS_RESET = "reset";
+    private static final String STATS_ON = "on";
+    private static final String STATS_OFF = "off";
+    private static final String STATS_JSON = "json";
+    private static final String STATS_PROMETHEUS = "prometheus";
+    private static final int STATS_FILE_INDEX = 2;
+    private static final int STATS_EXPORT_COMMAND_LENGTH = 3;
+    private static final String STATS_INCORRECT_FORMAT_EXCEPTION_MESSAGE =
+            "Did not execute stats due to incorrect format.";
+    private static final String STATS_WRITE_EXCEPTION_MESSAGE = "Did not write stats due to a file error.";
+    private static final String STATS_DISABLED_MESSAGE = "Metrics are disabled.";
     private static final String FONT_NAME = "Courier New";
 
     // Instance variables
@@ -76,6 +149,10 @@ public class Shell {
     private final Image paddedImage;             // The input image with padded dimensions
     private int resolution;                      // Current resolution for ASCII art
     private String outputType;                   // Current output type (console or HTML)
+    private boolean compressOutput;              // Whether HTML output is gzip-compressed
+    private boolean colorOutput;                 // Whether HTML output is drawn in tile colors
+    private int threads;                         // Number of threads used to generate ASCII art
+    private ForkJoinPool pool;                   // Pool for parallel generation, null when sequential
 
     /**
      * Constructs a new Shell instance with the specified image.
@@ -86,6 +163,7 @@ public class Shell {
         this.charMatcher = new SubImgCharMatcher(DEFAULT_CHARSET);
         this.resolution = DEFAULT_RESOLUTION;
         this.outputType = CONSOLE_COMMAND;
+        this.threads = DEFAULT_THREADS;
     }
 
     /**
@@ -100,10 +178,17 @@ public class Shell {
             }
             checkCommand(userInput.split(SPLITTER));
         }
+        if (this.pool != null) {
+            this.pool.shutdown();
+        }
     }
 
     /**
      * Main entry point for the ASCII art application.
+     * An optional maximum resolution after the image path decodes the image subsampled, with
+     * just enough pixels for that resolution; resolution bounds then follow the decoded size.
+     * Without it the image is loaded through the {@link LumaCache}, so with the cache configured
+     * an image converted in an earlier session is not decoded again.
      * @param args Command line arguments (expects image file path as first argument)
      */
     public static void main(String[] args) {
@@ -112,18 +197,235 @@ public class Shell {
             return;
         }
 
+        if (args[IMAGE_NAME_INDEX].equals(STREAM_FLAG)) {
+            streamMain(args);
+            return;
+        }
+        if (args[IMAGE_NAME_INDEX].equals(BATCH_FLAG)) {
+            batchMain(args);
+            return;
+        }
+        if (args[IMAGE_NAME_INDEX].equals(SERVE_FLAG)) {
+            serveMain(args);
+            return;
+        }
+        if (args[IMAGE_NAME_INDEX].equals(ANIMATE_FLAG)) {
+            animateMain(args);
+            return;
+        }
+
         String originalImageFileName = args[IMAGE_NAME_INDEX];
+        int maxResolution = 0;
+        if (args.length > MAX_RESOLUTION_INDEX) {
+            try {
+                maxResolution = Integer.parseInt(args[MAX_RESOLUTION_INDEX]);
+            } catch (NumberFormatException exception) {
+                maxResolution = 0;
+            }
+            if (maxResolution < 1) {
+                System.err.println(MAX_RESOLUTION_USAGE_MESSAGE);
+                return;
+            }
+        }
         Image originalImage;
         try {
-            originalImage = new Image(originalImageFileName);
+            originalImage = maxResolution > 0 ? new Image(originalImageFileName, maxResolution) :
+                    LumaCache.load(originalImageFileName);
         } catch (IOException e) {
             System.err.println("Error loading image: " + e.getMessage());
             return;
         }
+        if (originalImage.getSampleStep() > 1) {
+            System.out.println(String.format(SUBSAMPLED_IMAGE_FORMAT, originalImage.getWidth(),
+                    originalImage.getHeight(), originalImage.getSampleStep(), maxResolution));
+        }
         Shell shell = new Shell(originalImage);
         shell.run();
     }
 
+    /**
+     * Converts one image in streaming mode, without loading it into memory, using the default
+     * charset. Intended for images too large for the interactive shell.
+     * @param args Command line arguments: --stream, image path, resolution, and optionally
+     *             the output type and the subsampling step
+     */
+    private static void streamMain(String[] args) {
+        if (args.length <= STREAM_RESOLUTION_INDEX) {
+            System.err.println(STREAM_USAGE_MESSAGE);
+            return;
+        }
+        int resolution;
+        int sampleStep = 1;
+        try {
+            resolution = Integer.parseInt(args[STREAM_RESOLUTION_INDEX]);
+            if (args.length > STREAM_SAMPLE_STEP_INDEX) {
+                sampleStep = Integer.parseInt(args[STREAM_SAMPLE_STEP_INDEX]);
+            }
+        } catch (NumberFormatException exception) {
+            System.err.println(STREAM_USAGE_MESSAGE);
+            return;
+        }
+        StreamingAsciiOutput asciiOutput = new ConsoleAsciiOutput();
+        if (args.length > STREAM_OUTPUT_INDEX && args[STREAM_OUTPUT_INDEX].equals(HTML_COMMAND)) {
+            asciiOutput = new HtmlAsciiOutput(HTML_FILENAME, FONT_NAME);
+        }
+
+        StreamingAsciiArtAlgorithm algorithm = new StreamingAsciiArtAlgorithm(
+                new SubImgCharMatcher(DEFAULT_CHARSET), args[STREAM_IMAGE_INDEX], resolution, sampleStep);
+        try {
+            algorithm.run(asciiOutput);
+        } catch (IOException e) {
+            System.err.println("Error converting image: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Converts every image of a directory or glob without user interaction.
+     * @param args Command line arguments: --batch, directory or glob, resolution, output type,
+     *             and optionally the charset and the number of worker threads
+     */
+    private static void batchMain(String[] args) {
+        if (args.length <= BATCH_OUTPUT_INDEX || !(args[BATCH_OUTPUT_INDEX].equals(CONSOLE_COMMAND) ||
+                args[BATCH_OUTPUT_INDEX].equals(HTML_COMMAND))) {
+            System.err.println(BATCH_USAGE_MESSAGE);
+            return;
+        }
+        int resolution;
+        int threads = Runtime.getRuntime().availableProcessors();
+        char[] charset = DEFAULT_CHARSET;
+        try {
+            resolution = Integer.parseInt(args[BATCH_RESOLUTION_INDEX]);
+            if (args.length > BATCH_CHARSET_INDEX) {
+                charset = parseCharset(args[BATCH_CHARSET_INDEX]);
+            }
+            if (args.length > BATCH_THREADS_INDEX) {
+                threads = Integer.parseInt(args[BATCH_THREADS_INDEX]);
+            }
+        } catch (IllegalArgumentException exception) {
+            System.err.println(BATCH_USAGE_MESSAGE);
+            return;
+        }
+        if (charset.length < 2 || threads < DEFAULT_THREADS || threads > MAX_THREADS) {
+            System.err.println(BATCH_USAGE_MESSAGE);
+            return;
+        }
+
+        BatchConverter converter = new BatchConverter(args[BATCH_SOURCE_INDEX], charset,
+                resolution, args[BATCH_OUTPUT_INDEX], threads);
+        try {
+            converter.run();
+        } catch (IOException e) {
+            System.err.println("Error listing images: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Converts an animated GIF or a directory of numbered frames into an ASCII animation,
+     * played in the terminal or written to an HTML file. Terminal playback follows the frame
+     * delays when standard output is a console, and runs as fast as possible when redirected.
+     * The delta output recomputes only the tiles each frame changes and redraws only the
+     * characters that changed.
+     * @param args Command line arguments: --animate, GIF or directory, resolution, output type,
+     *             and optionally the charset and the frame rate of a frame directory
+     */
+    private static void animateMain(String[] args) {
+        if (args.length <= ANIMATE_OUTPUT_INDEX || !(args[ANIMATE_OUTPUT_INDEX].equals(CONSOLE_COMMAND) ||
+                args[ANIMATE_OUTPUT_INDEX].equals(DELTA_COMMAND) || args[ANIMATE_OUTPUT_INDEX].equals(HTML_COMMAND))) {
+            System.err.println(ANIMATE_USAGE_MESSAGE);
+            return;
+        }
+        int resolution;
+        int framesPerSecond = DEFAULT_FRAMES_PER_SECOND;
+        char[] charset = DEFAULT_CHARSET;
+        try {
+            resolution = Integer.parseInt(args[ANIMATE_RESOLUTION_INDEX]);
+            if (args.length > ANIMATE_CHARSET_INDEX) {
+                charset = parseCharset(args[ANIMATE_CHARSET_INDEX]);
+            }
+            if (args.length > ANIMATE_FPS_INDEX) {
+                framesPerSecond = Integer.parseInt(args[ANIMATE_FPS_INDEX]);
+            }
+        } catch (IllegalArgumentException exception) {
+            System.err.println(ANIMATE_USAGE_MESSAGE);
+            return;
+        }
+        if (charset.length < 2 || framesPerSecond < 1) {
+            System.err.println(ANIMATE_USAGE_MESSAGE);
+            return;
+        }
+
+        boolean delta = args[ANIMATE_OUTPUT_INDEX].equals(DELTA_COMMAND);
+        AnimationOutput output = args[ANIMATE_OUTPUT_INDEX].equals(HTML_COMMAND) ?
+                new HtmlAnimationOutput(HTML_FILENAME, FONT_NAME) :
+                new TerminalAnimationOutput(null, System.console() != null, delta);
+        AnimationConverter converter = new AnimationConverter(args[ANIMATE_SOURCE_INDEX], charset,
+                resolution, MILLIS_PER_SECOND / framesPerSecond, delta);
+        long start = System.nanoTime();
+        try {
+            int frames = converter.run(output);
+            double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+            System.err.printf(ANIMATE_SUMMARY_FORMAT, frames, seconds, frames / seconds);
+        } catch (IOException e) {
+            System.err.println("Error converting animation: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs the HTTP conversion service on localhost until the process is terminated.
+     * Glyphs rendered while serving are saved when the process exits.
+     * @param args Command line arguments: --serve and the port to listen on
+     */
+    private static void serveMain(String[] args) {
+        int port;
+        try {
+            port = Integer.parseInt(args[SERVE_PORT_INDEX]);
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException exception) {
+            System.err.println(SERVE_USAGE_MESSAGE);
+            return;
+        }
+        ConversionServer server;
+        try {
+            server = new ConversionServer(port);
+        } catch (IOException e) {
+            System.err.println("Error starting server: " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(0)));
+        server.start();
+        System.out.println(String.format(SERVE_STARTED_FORMAT, server.getPort()));
+    }
+
+    /**
+     * Parses a charset argument: "all" for every legal character, a range such as "a-z",
+     * or the literal characters to use.
+     * @param argument The charset argument
+     * @return The characters of the charset
+     * @throws IllegalArgumentException If a character is outside the legal ASCII range
+     */
+    static char[] parseCharset(String argument) {
+        int firstChar;
+        int lastChar;
+        if (argument.equals(ADD_ALL_COMMAND)) {
+            firstChar = MIN_LEGAL_CHAR;
+            lastChar = MAX_LEGAL_CHAR;
+        } else if (argument.length() == ADD_WITH_COMMAND_LENGTH && argument.charAt(RANGE_INDEX) == RANGE_CHAR) {
+            firstChar = Math.min(argument.charAt(RANGE_FIRST_CHAR_INDEX), argument.charAt(RANGE_LAST_CHAR_INDEX));
+            lastChar = Math.max(argument.charAt(RANGE_FIRST_CHAR_INDEX), argument.charAt(RANGE_LAST_CHAR_INDEX));
+        } else {
+            char[] charset = argument.toCharArray();
+            for (char character : charset) {
+                if (character < MIN_LEGAL_CHAR || character > MAX_LEGAL_CHAR) {
+                    throw new IllegalArgumentException(ADD_COMMAND_EXCEPTION_MESSAGE);
+                }
+            }
+            return charset;
+        }
+        if (firstChar < MIN_LEGAL_CHAR || lastChar > MAX_LEGAL_CHAR) {
+            throw new IllegalArgumentException(ADD_COMMAND_EXCEPTION_MESSAGE);
+        }
+        return charRange(firstChar, lastChar);
+    }
+
     /**
      * Determines which command to execute based on user input.
      * @param userArguments The command and its arguments split into an array
@@ -150,6 +452,15 @@ public class Shell {
                 case ASCII_ART_COMMAND:
                     asciiArtCommand();
                     break;
+                case MATCH_COMMAND:
+                    matchCommand(userArguments);
+                    break;
+                case THREADS_COMMAND:
+                    threadsCommand(userArguments);
+                    break;
+                case STATS_COMMAND:
+                    statsCommand(userArguments);
+                    break;
                 default:
                     throw new IOException(INCORRECT_COMMAND_FORMAT_EXCEPTION_MESSAGE);
             }
@@ -160,41 +471,56 @@ public class Shell {
 
     /**
      * Executes the ASCII art generation and outputs the result.
-     * @throws IOException If the character set is too small (less than 2 characters)
+     * @throws IOException If the character set is too small (less than 2 characters), or the
+     *                     colors of a cached image cannot be decoded
      */
     private void asciiArtCommand() throws IOException {
-        AsciiOutput asciiOutput;
-        if (this.charMatcher.getSortedChars().size() < 2) {
+        StreamingAsciiOutput asciiOutput;
+        if (this.charMatcher.getCharCount() < 2) {
             throw new IOException(CHARSET_EXCEPTION_MESSAGE);
         }
 
-        // Generate ASCII art
-        AsciiArtAlgorithm asciiArtAlgorithm = new AsciiArtAlgorithm(
-                this.charMatcher.getSortedChars(),
-                this.paddedImage,
-                this.resolution
-        );
-        char[][] asciiMatrix = asciiArtAlgorithm.run();
-
-        // Output based on selected method
+        // Select output method
         if (this.outputType.equals(CONSOLE_COMMAND)) {
             asciiOutput = new ConsoleAsciiOutput();
-            asciiOutput.out(asciiMatrix);
         } else {
-            asciiOutput = new HtmlAsciiOutput(HTML_FILENAME, FONT_NAME);
-            asciiOutput.out(asciiMatrix);
+            asciiOutput = new HtmlAsciiOutput(this.compressOutput ? HTML_GZIP_FILENAME : HTML_FILENAME,
+                    FONT_NAME, this.compressOutput, this.colorOutput);
         }
+
+        // Generate ASCII art with the session's matcher and the already padded image,
+        // streaming each row to the output as soon as it is ready
+        AsciiArtAlgorithm asciiArtAlgorithm = new AsciiArtAlgorithm(
+                this.charMatcher,
+                this.paddedImage,
+                this.resolution
+        );
+        asciiArtAlgorithm.run(asciiOutput, this.pool);
     }
 
     /**
-     * Changes the output method (console or HTML).
+     * Changes the output method (console or HTML). HTML may be followed by the options
+     * gzip (compressed output) and color (characters drawn in their tiles' colors).
      * @param userArguments The command arguments
      * @throws IOException If the command format is incorrect
      */
     private void outputCommand(String[] userArguments) throws IOException {
         if (userArguments.length >= COMMAND_WITH_TYPES_LENGTH &&
                 userArguments[COMMAND_SUB_TYPE_INDEX].equals(HTML_COMMAND)) {
+            boolean compress = false;
+            boolean color = false;
+            for (int index = HTML_OPTIONS_INDEX; index < userArguments.length; index++) {
+                if (userArguments[index].equals(GZIP_COMMAND)) {
+                    compress = true;
+                } else if (userArguments[index].equals(COLOR_COMMAND)) {
+                    color = true;
+                } else {
+                    throw new IOException(OUTPUT_INCORRECT_FORMAT_EXCEPTION_MESSAGE);
+                }
+            }
             this.outputType = HTML_COMMAND;
+            this.compressOutput = compress;
+            this.colorOutput = color;
         } else if (userArguments.length >= COMMAND_WITH_TYPES_LENGTH &&
                 userArguments[COMMAND_SUB_TYPE_INDEX].equals(CONSOLE_COMMAND)) {
             this.outputType = CONSOLE_COMMAND;
@@ -203,6 +529,95 @@ public class Shell {
         }
     }
 
+    /**
+     * Changes the character matching method (exact search or quantized lookup table).
+     * @param userArguments The command arguments
+     * @throws IOException If the command format is incorrect
+     */
+    private void matchCommand(String[] userArguments) throws IOException {
+        if (userArguments.length >= COMMAND_WITH_TYPES_LENGTH &&
+                (userArguments[COMMAND_SUB_TYPE_INDEX].equals(MATCH_EXACT) ||
+                        userArguments[COMMAND_SUB_TYPE_INDEX].equals(MATCH_LOOKUP_TABLE))) {
+            this.charMatcher.setMatchMethod(userArguments[COMMAND_SUB_TYPE_INDEX]);
+        } else {
+            throw new IOException(MATCH_INCORRECT_FORMAT_EXCEPTION_MESSAGE);
+        }
+    }
+
+    /**
+     * Shows, resets, toggles or exports the pipeline metrics.
+     * Without arguments the metrics table is printed; "reset" zeroes it, "on" and "off"
+     * toggle collection, and "json <file>" or "prometheus <file>" export it to a file.
+     * @param userArguments The command arguments
+     * @throws IOException If the command format is incorrect or the file cannot be written
+     */
+    private void statsCommand(String[] userArguments) throws IOException {
+        if (userArguments.length < COMMAND_WITH_TYPES_LENGTH) {
+            if (!Metrics.isEnabled()) {
+                System.out.println(STATS_DISABLED_MESSAGE);
+            }
+            System.out.print(Metrics.format());
+            return;
+        }
+        switch (userArguments[COMMAND_SUB_TYPE_INDEX]) {
+            case STATS_RESET:
+                Metrics.reset();
+                break;
+            case STATS_ON:
+                Metrics.setEnabled(true);
+                break;
+            case STATS_OFF:
+                Metrics.setEnabled(false);
+                break;
+            case STATS_JSON:
+            case STATS_PROMETHEUS:
+                if (userArguments.length < STATS_EXPORT_COMMAND_LENGTH) {
+                    throw new IOException(STATS_INCORRECT_FORMAT_EXCEPTION_MESSAGE);
+                }
+                try {
+                    Metrics.export(Paths.get(userArguments[STATS_FILE_INDEX]),
+                            userArguments[COMMAND_SUB_TYPE_INDEX].equals(STATS_PROMETHEUS));
+                } catch (IOException | InvalidPathException e) {
+                    throw new IOException(STATS_WRITE_EXCEPTION_MESSAGE);
+                }
+                break;
+            default:
+                throw new IOException(STATS_INCORRECT_FORMAT_EXCEPTION_MESSAGE);
+        }
+    }
+
+    /**
+     * Changes the number of threads used for ASCII art generation, or prints it when no
+     * number is given. A single thread runs the conversion on the shell's own thread.
+     * @param userArguments The command arguments
+     * @throws IOException If the thread count is not a number in the legal range
+     */
+    private void threadsCommand(String[] userArguments) throws IOException {
+        if (userArguments.length < COMMAND_WITH_TYPES_LENGTH) {
+            System.out.println(String.format(THREADS_CURRENT_OUTPUT_FORMAT, this.threads));
+            return;
+        }
+        int newThreads;
+        try {
+            newThreads = Integer.parseInt(userArguments[COMMAND_SUB_TYPE_INDEX]);
+        } catch (NumberFormatException exception) {
+            throw new IOException(THREADS_INCORRECT_FORMAT_EXCEPTION_MESSAGE);
+        }
+        if (newThreads < DEFAULT_THREADS || newThreads > MAX_THREADS) {
+            throw new IOException(THREADS_INCORRECT_FORMAT_EXCEPTION_MESSAGE);
+        }
+
+        // Replace the pool only when the parallelism actually changes
+        if (newThreads != this.threads) {
+            if (this.pool != null) {
+                this.pool.shutdown();
+            }
+            this.pool = newThreads > DEFAULT_THREADS ? new ForkJoinPool(newThreads) : null;
+            this.threads = newThreads;
+        }
+        System.out.println(String.format(THREADS_COMMAND_OUTPUT_FORMAT, this.threads));
+    }
+
     /**
      * Changes the resolution for ASCII art generation.
      * @param userArguments The command arguments
@@ -299,14 +714,8 @@ public class Shell {
             throw new IOException(exception_message);
         }
 
-        // Process each character in the range
-        for (int charValue = firstChar; charValue <= lastChar; charValue++) {
-            if (addCommand) {
-                this.charMatcher.addChar((char) charValue);
-            } else {
-                this.charMatcher.removeChar((char) charValue);
-            }
-        }
+        // Process the whole range as one batch
+        addRemoveChars(charRange(firstChar, lastChar), addCommand);
     }
 
     /**
@@ -326,13 +735,34 @@ public class Shell {
      * @param addCommand True to add, false to remove
      */
     private void addRemoveAllCommand(boolean addCommand) {
-        for (int charValue = MIN_LEGAL_CHAR; charValue <= MAX_LEGAL_CHAR; charValue++) {
-            if (addCommand) {
-                this.charMatcher.addChar((char) charValue);
-            } else {
-                this.charMatcher.removeChar((char) charValue);
-            }
+        addRemoveChars(charRange(MIN_LEGAL_CHAR, MAX_LEGAL_CHAR), addCommand);
+    }
+
+    /**
+     * Adds or removes several characters with a single update of the matcher's index.
+     * @param chars The characters to add/remove
+     * @param addCommand True to add, false to remove
+     */
+    private void addRemoveChars(char[] chars, boolean addCommand) {
+        if (addCommand) {
+            this.charMatcher.addChars(chars);
+        } else {
+            this.charMatcher.removeChars(chars);
+        }
+    }
+
+    /**
+     * Lists the characters of an inclusive range.
+     * @param firstChar The first character of the range
+     * @param lastChar The last character of the range
+     * @return The characters from firstChar to lastChar
+     */
+    private static char[] charRange(int firstChar, int lastChar) {
+        char[] chars = new char[lastChar - firstChar + 1];
+        for (int charValue = firstChar; charValue <= lastChar; charValue++) {
+            chars[charValue - firstChar] = (char) charValue;
         }
+        return chars;
     }
 
     /**
@@ -0,0 +1,167 @@
+package ascii_art;
+
+import ascii_output.StreamingAsciiOutput;
+import image.BrightnessTable;
+import image.Image;
+import image.ImageEditor;
+import image.ImageStripeReader;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Converts an image file into ASCII art without loading the whole image into memory.
+ * The source is read in bands of BAND_TILE_ROWS tile rows; each tile row of a band is reduced
+ * to a row of tile brightness values and characters, which is pushed to the output before the
+ * next band is read, so peak memory is bounded by a few tile rows of sampled pixels. The
+ * tradeoff is decode time: readers such as JPEG and PNG decode from the top of the file on
+ * every read, so each band costs a decode of everything above it, and total decode work grows
+ * with the number of bands times the image height. A sample step or a lower resolution (fewer,
+ * taller tile rows) cuts that cost. The image is padded virtually, exactly as
+ * {@link ImageEditor#padImageDimensions} would pad it, so without subsampling the result is
+ * identical to {@link AsciiArtAlgorithm}; pixels past the last whole tile are ignored, as there.
+ * The per-row buffers are allocated once per run, so an instance runs one conversion at a time.
+ * @author Salah Mahmied
+ */
+public class StreamingAsciiArtAlgorithm {
+
+    private static final int WHITE_SCALED_LUMA = Image.scaledLumaOf(0xFFFFFFFF); // Luma of padding pixels
+    private static final int SIDES_NUMBER = 2;      // Padding is split between both sides
+    private static final int NO_SUBSAMPLING = 1;
+    private static final int BAND_TILE_ROWS = 8;    // Tile rows decoded per read
+    private static final String RESOLUTION_EXCEPTION_MESSAGE =
+            "Resolution %d is out of bounds for a %dx%d image.";
+
+    private final SubImgCharMatcher charMatcher;    // Matches brightness values to characters
+    private final String filename;                  // Path of the image to convert
+    private final int resolution;                   // The resolution for ASCII art
+    private final int sampleStep;                   // Read every sampleStep-th pixel in each direction
+    private long[] tileSums;                        // Summed sampled luma of each tile of a stripe
+    private int[] tileSamples;                      // Number of samples summed into each tile
+    private char[] charRow;                         // The characters of a stripe, passed to the output
+
+    /**
+     * Constructs a streaming conversion that reads every source pixel.
+     * @param charMatcher The matcher to match brightness values to characters with
+     * @param filename Path of the image file to convert
+     * @param resolution The resolution (number of sub-images per dimension) for the conversion
+     */
+    public StreamingAsciiArtAlgorithm(SubImgCharMatcher charMatcher, String filename, int resolution) {
+        this(charMatcher, filename, resolution, NO_SUBSAMPLING);
+    }
+
+    /**
+     * Constructs a streaming conversion that subsamples the source while decoding.
+     * Tile brightness is then estimated from the sampled pixels only.
+     * @param charMatcher The matcher to match brightness values to characters with
+     * @param filename Path of the image file to convert
+     * @param resolution The resolution (number of sub-images per dimension) for the conversion
+     * @param sampleStep Read every sampleStep-th pixel in each direction; 1 reads every pixel
+     */
+    public StreamingAsciiArtAlgorithm(SubImgCharMatcher charMatcher, String filename, int resolution,
+                                      int sampleStep) {
+        this.charMatcher = charMatcher;
+        this.filename = filename;
+        this.resolution = resolution;
+        this.sampleStep = Math.max(NO_SUBSAMPLING, sampleStep);
+    }
+
+    /**
+     * Runs the conversion and streams the ASCII art to the given output, one row per stripe.
+     * @param asciiOutput The output to stream the rows to
+     * @throws IOException If the image cannot be read or the resolution does not fit the image
+     */
+    public void run(StreamingAsciiOutput asciiOutput) throws IOException {
+        try (ImageStripeReader reader = new ImageStripeReader(this.filename)) {
+            int paddedWidth = ImageEditor.getPaddedDimension(reader.getWidth());
+            int paddedHeight = ImageEditor.getPaddedDimension(reader.getHeight());
+            if (this.resolution < 1 || this.resolution > paddedWidth ||
+                    paddedWidth / this.resolution > paddedHeight) {
+                throw new IOException(String.format(RESOLUTION_EXCEPTION_MESSAGE,
+                        this.resolution, reader.getWidth(), reader.getHeight()));
+            }
+            int tileSize = paddedWidth / this.resolution;
+            int rowsNumber = paddedHeight / tileSize;
+            int paddingTop = (paddedHeight - reader.getHeight()) / SIDES_NUMBER;
+            this.tileSums = new long[this.resolution];
+            this.tileSamples = new int[this.resolution];
+            this.charRow = new char[this.resolution];
+
+            // Each band's pixels are released once its rows have been written
+            asciiOutput.begin(this.resolution, rowsNumber);
+            for (int bandStart = 0; bandStart < rowsNumber; bandStart += BAND_TILE_ROWS) {
+                int bandEnd = Math.min(rowsNumber, bandStart + BAND_TILE_ROWS);
+                int firstSourceRow = Math.max(0, bandStart * tileSize - paddingTop);
+                int lastSourceRow = Math.min(reader.getHeight(), bandEnd * tileSize - paddingTop);
+                Image band = lastSourceRow > firstSourceRow ?
+                        reader.readStripe(firstSourceRow, lastSourceRow - firstSourceRow, this.sampleStep) : null;
+                for (int rowIndex = bandStart; rowIndex < bandEnd; rowIndex++) {
+                    asciiOutput.row(convertStripe(reader, band, firstSourceRow, rowIndex, tileSize,
+                            paddedWidth, paddedHeight), rowIndex);
+                }
+            }
+            asciiOutput.end();
+        }
+    }
+
+    /**
+     * Converts the source rows covered by one row of tiles, taken from the band that holds
+     * them, to characters. The returned row is overwritten by the next call.
+     */
+    private char[] convertStripe(ImageStripeReader reader, Image band, int bandFirstRow, int rowIndex,
+                                 int tileSize, int paddedWidth, int paddedHeight) {
+        int paddingLeft = (paddedWidth - reader.getWidth()) / SIDES_NUMBER;
+        int paddingTop = (paddedHeight - reader.getHeight()) / SIDES_NUMBER;
+        int firstSourceRow = Math.max(0, rowIndex * tileSize - paddingTop);
+        int lastSourceRow = Math.min(reader.getHeight(), (rowIndex + 1) * tileSize - paddingTop);
+        int sourceRows = Math.max(0, lastSourceRow - firstSourceRow);
+
+        // Sum the sampled source pixels of each tile in the stripe
+        Arrays.fill(this.tileSums, 0);
+        Arrays.fill(this.tileSamples, 0);
+        if (sourceRows > 0) {
+            // The band's sampled rows that fall inside this stripe
+            int firstBandRow = ceilDivide(firstSourceRow - bandFirstRow, this.sampleStep);
+            int lastBandRow = Math.min(band.getHeight(), ceilDivide(lastSourceRow - bandFirstRow, this.sampleStep));
+            for (int bandRow = firstBandRow; bandRow < lastBandRow; bandRow++) {
+                for (int bandColumn = 0; bandColumn < band.getWidth(); bandColumn++) {
+                    int tile = (bandColumn * this.sampleStep + paddingLeft) / tileSize;
+                    if (tile >= this.resolution) {
+                        break;      // Past the last whole tile, which the padded image drops too
+                    }
+                    this.tileSums[tile] += Image.scaledLumaOf(band.getRGB(bandRow, bandColumn));
+                    this.tileSamples[tile]++;
+                }
+            }
+        }
+
+        long tilePixels = (long) tileSize * tileSize;
+        for (int columnIndex = 0; columnIndex < this.resolution; columnIndex++) {
+            int firstSourceColumn = Math.max(0, columnIndex * tileSize - paddingLeft);
+            int lastSourceColumn = Math.min(reader.getWidth(), (columnIndex + 1) * tileSize - paddingLeft);
+            long sourcePixels = (long) sourceRows * Math.max(0, lastSourceColumn - firstSourceColumn);
+            long paddingPixels = tilePixels - sourcePixels;
+
+            long tileSum;
+            if (this.sampleStep == NO_SUBSAMPLING) {
+                tileSum = this.tileSums[columnIndex] + paddingPixels * WHITE_SCALED_LUMA;
+            } else if (this.tileSamples[columnIndex] > 0) {
+                // Scale the sampled mean up to the number of source pixels it stands for
+                tileSum = Math.round((double) this.tileSums[columnIndex] / this.tileSamples[columnIndex] *
+                        sourcePixels) +
+                        paddingPixels * WHITE_SCALED_LUMA;
+            } else {
+                // No sample fell inside the tile's small source overlap; treat it as padding
+                tileSum = tilePixels * WHITE_SCALED_LUMA;
+            }
+            double brightness = BrightnessTable.toBrightness(tileSum, tilePixels);
+            this.charRow[columnIndex] = this.charMatcher.getCharByImageBrightness(brightness);
+        }
+        return this.charRow;
+    }
+
+    private static int ceilDivide(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+}
@@ -0,0 +1,28 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output a sequence of ASCII art frames.
+ * An animation is one call to begin, one call to frame for each frame in order,
+ * and one call to end.
+ * @author Salah Mahmied
+ */
+public interface AnimationOutput {
+    /**
+     * Start a new animation whose frames all have the specified dimensions.
+     * @param width The number of characters in each row
+     * @param height The number of rows
+     */
+    void begin(int width, int height);
+
+    /**
+     * Output the next frame. The array may be reused by the caller once this method returns.
+     * @param chars The characters of the frame, indexed [row][column]
+     * @param delay How long the frame is shown, in milliseconds
+     */
+    void frame(char[][] chars, int delay);
+
+    /**
+     * Finish the animation, flushing and releasing anything held since begin.
+     */
+    void end();
+}
@@ -1,16 +1,118 @@
 package ascii_output;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
 /**
  * Output a 2D array of chars to the console.
+ * Rows are encoded into a reusable byte buffer that is written to the stream in large chunks,
+ * so no objects are allocated per character and there is no write call per character.
  * @author Salah Mahmied
- */public class ConsoleAsciiOutput implements AsciiOutput{
+ */public class ConsoleAsciiOutput implements StreamingAsciiOutput{
+    private static final int BUFFER_SIZE = 1 << 16;     // Bytes collected before each write
+    private static final int MAX_SINGLE_BYTE_CHAR = 127;
+    private static final byte SPACE = ' ';
+
+    private final OutputStream target;      // The stream to write to, or null for System.out
+    private final boolean spaced;           // Whether each character is followed by a space
+    private final byte[] lineSeparator = System.lineSeparator().getBytes();
+    private final int maxCharBytes = (int) Math.ceil(Charset.defaultCharset().newEncoder().maxBytesPerChar());
+    private OutputStream out;               // The stream used between begin and end
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;                   // Number of bytes waiting in the buffer
+
+    /**
+     * Constructs an output to System.out that follows every character with a space.
+     */
+    public ConsoleAsciiOutput() {
+        this(null, true);
+    }
+
+    /**
+     * Constructs an output to System.out.
+     * @param spaced Whether every character is followed by a space
+     */
+    public ConsoleAsciiOutput(boolean spaced) {
+        this(null, spaced);
+    }
+
+    /**
+     * Constructs an output to the given stream, in the console text layout.
+     * @param target The stream to write to
+     * @param spaced Whether every character is followed by a space
+     */
+    public ConsoleAsciiOutput(OutputStream target, boolean spaced) {
+        this.target = target;
+        this.spaced = spaced;
+    }
+
+    @Override
+    public void begin(int width, int height) {
+        // System.out is looked up here so redirection with System.setOut is respected;
+        // flushing it first keeps earlier prompts ahead of the ASCII art
+        System.out.flush();
+        out = target != null ? target : System.out;
+        position = 0;
+    }
+
     @Override
-    public void out(char[][] chars) {
-        for (int y = 0; y < chars.length ; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+    public void row(char[] row, int index) {
+        // Reserve room for the worst-case encoding so the loop below needs no bounds checks
+        int rowBytes = row.length * (maxCharBytes + (spaced ? 1 : 0)) + lineSeparator.length;
+        if (position + rowBytes > buffer.length) {
+            flushBuffer();
+            if (rowBytes > buffer.length) {
+                buffer = new byte[rowBytes];
             }
-            System.out.println();
         }
+        for (char character : row) {
+            if (character > MAX_SINGLE_BYTE_CHAR) {
+                // Rare: characters outside ASCII go through the platform encoding
+                writeEncoded(character);
+            } else {
+                buffer[position++] = (byte) character;
+            }
+            if (spaced) {
+                buffer[position++] = SPACE;
+            }
+        }
+        System.arraycopy(lineSeparator, 0, buffer, position, lineSeparator.length);
+        position += lineSeparator.length;
+    }
+
+    @Override
+    public void end() {
+        flushBuffer();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write to the console");
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the stream and empties the buffer.
+     */
+    private void flushBuffer() {
+        if (position == 0) {
+            return;
+        }
+        try {
+            out.write(buffer, 0, position);
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write to the console");
+        }
+        position = 0;
+    }
+
+    /**
+     * Encodes a non-ASCII character, which may take several bytes, into the buffer.
+     */
+    private void writeEncoded(char character) {
+        byte[] encoded = String.valueOf(character).getBytes(Charset.defaultCharset());
+        System.arraycopy(encoded, 0, buffer, position, encoded.length);
+        position += encoded.length;
     }
 }
@@ -0,0 +1,121 @@
+package ascii_output;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.logging.Logger;
+
+/**
+ * Output ASCII art frames to a single HTML file that plays them in a web browser.
+ * Every frame is a hidden paragraph carrying its delay; a short script shows one frame at a
+ * time and advances after each frame's delay, looping forever.
+ * @author Salah Mahmied
+ */
+public class HtmlAnimationOutput implements AnimationOutput {
+    private static final int BUFFER_SIZE = 1 << 18;         // Bytes collected before each write
+    private static final byte[] FRAME_END = "</p>\n".getBytes(StandardCharsets.UTF_8);
+
+    private final String filename;
+    private final String fontName;
+    private final byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private OutputStream out;               // The open file between begin and end, null after a failure
+
+    /**
+     * Constructs an HTML animation output.
+     * @param filename The file to write, conventionally ending in .html
+     * @param fontName The font to display the characters in
+     */
+    public HtmlAnimationOutput(String filename, String fontName) {
+        this.filename = filename;
+        this.fontName = fontName;
+    }
+
+    @Override
+    public void begin(int width, int height) {
+        try {
+            out = new BufferedOutputStream(Files.newOutputStream(Paths.get(filename)), BUFFER_SIZE);
+            write(
+                "<!DOCTYPE html>\n"+
+                "<html>\n"+
+                "<head>\n"+
+                "<style>\n"+
+                "p {"+ HtmlFormat.getParagraphStyle(fontName, width) +"}\n"+
+                "</style>\n"+
+                "</head>\n"+
+                "<body style=\""+ HtmlFormat.BODY_STYLE +"\">\n");
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    @Override
+    public void frame(char[][] chars, int delay) {
+        if (out == null) {
+            return;
+        }
+        try {
+            write(String.format("<p hidden data-delay=\"%d\">\n", delay));
+            for (char[] row : chars) {
+                for (char character : row) {
+                    out.write(HtmlFormat.getRepresentation(character));
+                }
+                out.write(lineSeparator);
+            }
+            out.write(FRAME_END);
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    @Override
+    public void end() {
+        if (out == null) {
+            return;
+        }
+        try {
+            write(
+                "<script>\n"+
+                "const frames = document.querySelectorAll(\"p[data-delay]\");\n"+
+                "let current = 0;\n"+
+                "function show() {\n"+
+                "  frames.forEach((frame, index) => frame.hidden = index !== current);\n"+
+                "  const delay = Number(frames[current].dataset.delay);\n"+
+                "  current = (current + 1) % frames.length;\n"+
+                "  if (frames.length > 1) setTimeout(show, delay);\n"+
+                "}\n"+
+                "if (frames.length > 0) show();\n"+
+                "</script>\n"+
+                "</body>\n"+
+                "</html>\n");
+            out.close();
+        } catch (IOException e) {
+            fail();
+        }
+        out = null;
+    }
+
+    /**
+     * Writes a string to the file.
+     */
+    private void write(String text) throws IOException {
+        out.write(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Logs a write failure and abandons the current output.
+     */
+    private void fail() {
+        Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // The failure has already been reported
+            }
+        }
+        out = null;
+    }
+}
@@ -1,63 +1,275 @@
 package ascii_output;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * Rows are escaped through a precomputed table into a reusable byte buffer, which is written
+ * to a file channel in large chunks, optionally gzip-compressed.
+ * In color mode every character is drawn in its tile's average color, quantized to 4 bits per
+ * channel; consecutive characters of the same quantized color share one span.
  * @author Salah Mahmied
  */
-public class HtmlAsciiOutput implements AsciiOutput {
-    private static final double BASE_LINE_SPACING = 0.8;
-    private static final double BASE_FONT_SIZE = 150.0;
+public class HtmlAsciiOutput implements StreamingAsciiOutput {
+    private static final int BUFFER_SIZE = 1 << 18;         // Bytes collected before each write
+    private static final int MAX_ENCODED_CHAR_BYTES = 3;           // A UTF-8 encoded char
+    private static final byte[] SPAN_END = "</span>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SPAN_START = "<span style=\"color:#".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SPAN_START_END = "\">".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.UTF_8);
+    private static final int QUANTIZED_CHANNEL_MAX = 15;           // 4 bits per channel
+    private static final int QUANTIZED_CHANNEL_BITS = 4;
+    private static final int MAX_CHANNEL_VALUE = 255;
+    private static final int NO_COLOR = -1;
+    private static final int MAX_COLOR_CHANGE_BYTES = 32;          // Closing plus opening a span
 
     private final String fontName;
-    private final String filename;
+    private final String filename;          // The file to write, or null when writing to target
+    private final OutputStream target;      // The stream to write to instead of a file, if any
+    private final boolean compressed;       // Whether the file is written gzip-compressed
+    private final boolean colored;          // Whether characters are drawn in their tile colors
+    private int currentColor = NO_COLOR;    // Quantized color of the open span, if any
+    private final byte[] lineSeparator = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private OutputStream out;               // The open file between begin and end, null after a failure
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;                   // Number of bytes waiting in the buffer
 
     public HtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, false);
+    }
+
+    /**
+     * Constructs an HTML output that can write the file gzip-compressed.
+     * @param filename The file to write, conventionally ending in .html.gz when compressed
+     * @param fontName The font to display the characters in
+     * @param compressed Whether to gzip-compress the file
+     */
+    public HtmlAsciiOutput(String filename, String fontName, boolean compressed) {
+        this(filename, fontName, compressed, false);
+    }
+
+    /**
+     * Constructs an HTML output that can write the file gzip-compressed and in color.
+     * @param filename The file to write, conventionally ending in .html.gz when compressed
+     * @param fontName The font to display the characters in
+     * @param compressed Whether to gzip-compress the file
+     * @param colored Whether to draw every character in its tile's average color
+     */
+    public HtmlAsciiOutput(String filename, String fontName, boolean compressed, boolean colored) {
         this.fontName = fontName;
         this.filename = filename;
+        this.target = null;
+        this.compressed = compressed;
+        this.colored = colored;
+    }
+
+    /**
+     * Constructs an HTML output that writes the document to a stream instead of a file.
+     * The stream is flushed at the end of each document but never closed.
+     * @param target The stream to write to
+     * @param fontName The font to display the characters in
+     * @param colored Whether to draw every character in its tile's average color
+     */
+    public HtmlAsciiOutput(OutputStream target, String fontName, boolean colored) {
+        this.fontName = fontName;
+        this.filename = null;
+        this.target = target;
+        this.compressed = false;
+        this.colored = colored;
     }
 
     @Override
-    public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
+    public boolean isColored() {
+        return colored;
+    }
+
+    @Override
+    public void begin(int width, int height) {
+        try {
+            if (target != null) {
+                out = target;
+            } else {
+                FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                out = Channels.newOutputStream(channel);
+            }
+            if (compressed) {
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+            position = 0;
+            currentColor = NO_COLOR;
+            writeString(
                 "<!DOCTYPE html>\n"+
                 "<html>\n"+
-                "<body style=\""+
-                    "\tCOLOR:#000000;"+
-                    "\tTEXT-ALIGN:center;"+
-                    "\tFONT-SIZE:1px;\">\n"+
-                "<p style=\""+
-                    "\twhite-space:pre;"+
-                    "\tFONT-FAMILY:%s;"+
-                    "\tFONT-SIZE:%frem;"+
-                    "\tLETTER-SPACING:0.15em;"+
-                    "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
+                "<body style=\""+ HtmlFormat.BODY_STYLE +"\">\n"+
+                "<p style=\""+ HtmlFormat.getParagraphStyle(fontName, width) +"\">\n");
+        } catch(IOException e) {
+            fail();
+        }
+    }
+
+    @Override
+    public void row(char[] row, int index) {
+        if (out == null) {
+            return;
+        }
+        // Reserve room for the longest representation so the loop below needs no bounds checks
+        int rowBytes = row.length * Math.max(HtmlFormat.MAX_HTML_REPRESENTATION_BYTES, MAX_ENCODED_CHAR_BYTES) +
+                lineSeparator.length;
+        if (position + rowBytes > buffer.length && !flushBuffer()) {
+            return;
+        }
+        if (rowBytes > buffer.length) {
+            buffer = new byte[rowBytes];
+        }
+        for (char character : row) {
+            byte[] htmlRep = HtmlFormat.getRepresentation(character);
+            if (htmlRep.length == 1) {
+                buffer[position++] = htmlRep[0];
+            } else {
+                System.arraycopy(htmlRep, 0, buffer, position, htmlRep.length);
+                position += htmlRep.length;
+            }
+        }
+        System.arraycopy(lineSeparator, 0, buffer, position, lineSeparator.length);
+        position += lineSeparator.length;
+    }
+
+    @Override
+    public void row(char[] row, int[] colors, int index) {
+        if (out == null) {
+            return;
+        }
+        int rowBytes = row.length * (MAX_COLOR_CHANGE_BYTES +
+                Math.max(HtmlFormat.MAX_HTML_REPRESENTATION_BYTES, MAX_ENCODED_CHAR_BYTES)) + lineSeparator.length;
+        if (position + rowBytes > buffer.length && !flushBuffer()) {
+            return;
+        }
+        if (rowBytes > buffer.length) {
+            buffer = new byte[rowBytes];
+        }
+        for (int x = 0; x < row.length; x++) {
+            // Spans stay open across characters and rows until the quantized color changes
+            int color = quantizeColor(colors[x]);
+            if (color != currentColor) {
+                if (currentColor != NO_COLOR) {
+                    appendToBuffer(SPAN_END);
+                }
+                appendToBuffer(SPAN_START);
+                for (int shift = 2 * QUANTIZED_CHANNEL_BITS; shift >= 0; shift -= QUANTIZED_CHANNEL_BITS) {
+                    buffer[position++] = HEX_DIGITS[(color >> shift) & QUANTIZED_CHANNEL_MAX];
                 }
-                writer.newLine();
+                appendToBuffer(SPAN_START_END);
+                currentColor = color;
+            }
+            appendToBuffer(HtmlFormat.getRepresentation(row[x]));
+        }
+        appendToBuffer(lineSeparator);
+    }
+
+    @Override
+    public void end() {
+        if (out == null) {
+            return;
+        }
+        try {
+            if (currentColor != NO_COLOR) {
+                writeString("</span>");
+                currentColor = NO_COLOR;
             }
-            writer.write(
+            writeString(
                 "</p>\n"+
                 "</body>\n"+
                 "</html>\n");
+            if (out != null && flushBuffer()) {
+                if (target != null) {
+                    out.flush();
+                } else {
+                    out.close();
+                }
+            }
         } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            fail();
+        }
+        out = null;
+    }
+
+    /**
+     * Quantizes a packed 0xRRGGBB color to 4 bits per channel, packed as 0xRGB.
+     */
+    private static int quantizeColor(int rgb) {
+        int quantized = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+            int channel = (rgb >> shift) & MAX_CHANNEL_VALUE;
+            quantized = (quantized << QUANTIZED_CHANNEL_BITS) |
+                    ((channel * QUANTIZED_CHANNEL_MAX + MAX_CHANNEL_VALUE / 2) / MAX_CHANNEL_VALUE);
+        }
+        return quantized;
+    }
+
+    /**
+     * Appends bytes to the buffer; the caller has reserved enough room.
+     */
+    private void appendToBuffer(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Appends a string to the buffer, flushing first if it does not fit.
+     */
+    private void writeString(String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (position + bytes.length > buffer.length) {
+            if (!flushBuffer()) {
+                return;
+            }
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Writes the buffered bytes to the file and empties the buffer.
+     * @return false if the write failed and the output was abandoned
+     */
+    private boolean flushBuffer() {
+        try {
+            out.write(buffer, 0, position);
+            position = 0;
+            return true;
+        } catch (IOException e) {
+            fail();
+            return false;
+        }
+    }
+
+    /**
+     * Logs a write failure and abandons the current output.
+     */
+    private void fail() {
+        Logger.getGlobal().severe(filename != null ?
+                String.format("Failed to write to \"%s\"", filename) : "Failed to write HTML output");
+        if (out != null && target == null) {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+                // The failure has already been reported
+            }
         }
+        out = null;
+        position = 0;
     }
 }
@@ -0,0 +1,76 @@
+package ascii_output;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The HTML shared by the HTML outputs: the escaped bytes of every ASCII character and the
+ * styles of the page body and of the paragraphs holding the characters, so still images and
+ * animations are escaped and laid out alike.
+ * @author Salah Mahmied
+ */
+final class HtmlFormat {
+
+    /** The number of characters with a precomputed representation. */
+    static final int ASCII_TABLE_SIZE = 128;
+
+    /** The length of the longest precomputed representation, "&amp;". */
+    static final int MAX_HTML_REPRESENTATION_BYTES = 5;
+
+    /** The style of the page body. */
+    static final String BODY_STYLE =
+            "\tCOLOR:#000000;"+
+            "\tTEXT-ALIGN:center;"+
+            "\tFONT-SIZE:1px;";
+
+    private static final double BASE_LINE_SPACING = 0.8;
+    private static final double BASE_FONT_SIZE = 150.0;
+    private static final String PARAGRAPH_STYLE_FORMAT =
+            "\twhite-space:pre;"+
+            "\tFONT-FAMILY:%s;"+
+            "\tFONT-SIZE:%frem;"+
+            "\tLETTER-SPACING:0.15em;"+
+            "\tLINE-HEIGHT:%fem;";
+    private static final byte[][] HTML_REPRESENTATIONS = createHtmlRepresentations();
+
+    // Private constructor to prevent instantiation
+    private HtmlFormat() {}
+
+    /**
+     * Gets the style of a paragraph of ASCII art, sized so the art fits the page width.
+     * @param fontName The font to display the characters in
+     * @param width The number of characters per row
+     * @return The style declarations
+     */
+    static String getParagraphStyle(String fontName, int width) {
+        return String.format(PARAGRAPH_STYLE_FORMAT, fontName, BASE_FONT_SIZE/width, BASE_LINE_SPACING);
+    }
+
+    /**
+     * Gets the UTF-8 bytes of a character, escaped if it is an HTML special character.
+     * ASCII characters come from a precomputed table; any other character is encoded.
+     * @param character The character to represent
+     * @return The bytes to write; table entries are shared and must not be modified
+     */
+    static byte[] getRepresentation(char character) {
+        return character < ASCII_TABLE_SIZE ? HTML_REPRESENTATIONS[character] :
+                String.valueOf(character).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds the byte representation of every ASCII character, escaping HTML special characters.
+     */
+    private static byte[][] createHtmlRepresentations() {
+        byte[][] representations = new byte[ASCII_TABLE_SIZE][];
+        for (int character = 0; character < ASCII_TABLE_SIZE; character++) {
+            String htmlRep;
+            switch(character) {
+                case '<': htmlRep = "&lt;";  break;
+                case '>': htmlRep = "&gt;";  break;
+                case '&': htmlRep = "&amp;"; break;
+                default:  htmlRep = String.valueOf((char) character);
+            }
+            representations[character] = htmlRep.getBytes(StandardCharsets.UTF_8);
+        }
+        return representations;
+    }
+}
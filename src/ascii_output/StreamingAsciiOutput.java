@@ -0,0 +1,62 @@
+package ascii_output;
+
+/**
+ * An object implementing this interface can output ASCII art row by row,
+ * so writing can start before the whole character matrix exists.
+ * A stream of output is one call to begin, one call to row for each row in order,
+ * and one call to end.
+ * @author Salah Mahmied
+ */
+public interface StreamingAsciiOutput extends AsciiOutput {
+    /**
+     * Start a new output of the specified dimensions.
+     * @param width The number of characters in each row
+     * @param height The number of rows
+     */
+    void begin(int width, int height);
+
+    /**
+     * Output the specified row of chars. The array may be reused by the caller
+     * once this method returns.
+     * @param row The characters of the row
+     * @param index The index of the row, starting from 0
+     */
+    void row(char[] row, int index);
+
+    /**
+     * Output the specified row of chars together with the average color of each char's tile.
+     * Only called when {@link #isColored()} is true; outputs without color support write the
+     * chars alone.
+     * @param row The characters of the row
+     * @param colors The packed 0xRRGGBB color of each character's tile
+     * @param index The index of the row, starting from 0
+     */
+    default void row(char[] row, int[] colors, int index) {
+        row(row, index);
+    }
+
+    /**
+     * Whether this output renders tile colors, so the producer should compute them.
+     * @return true if rows should be passed with their colors
+     */
+    default boolean isColored() {
+        return false;
+    }
+
+    /**
+     * Finish the current output, flushing and releasing anything held since begin.
+     */
+    void end();
+
+    /**
+     * Output the specified 2D array of chars by streaming its rows.
+     */
+    @Override
+    default void out(char[][] chars) {
+        begin(chars.length == 0 ? 0 : chars[0].length, chars.length);
+        for (int y = 0; y < chars.length; y++) {
+            row(chars[y], y);
+        }
+        end();
+    }
+}
@@ -0,0 +1,238 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Plays ASCII art frames in a terminal that understands ANSI escape sequences.
+ * Every frame moves the cursor home and overwrites the previous one, and is written to the
+ * stream with a single write from a reusable byte buffer. When paced, each frame is held for
+ * its delay, measured from a running deadline so slow frames do not accumulate drift;
+ * otherwise frames are written as fast as they arrive, for example into a file.
+ * In delta mode only the first frame is written whole; every later frame writes just the cells
+ * that differ from the frame before it, each run of changed cells preceded by a cursor
+ * positioning sequence, so a mostly static animation costs a fraction of the bandwidth.
+ * @author Salah Mahmied
+ */
+public class TerminalAnimationOutput implements AnimationOutput {
+    private static final byte[] CLEAR_SCREEN = "\033[2J".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CURSOR_HOME = "\033[H".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HIDE_CURSOR = "\033[?25l".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SHOW_CURSOR = "\033[?25h".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CURSOR_POSITION_START = "\033[".getBytes(StandardCharsets.US_ASCII);
+    private static final byte CURSOR_POSITION_SEPARATOR = ';';
+    private static final byte CURSOR_POSITION_END = 'H';
+    private static final int MAX_CURSOR_POSITION_BYTES = 16;  // ESC [ row ; column H
+    private static final int MAX_SKIPPED_CELLS = 3;  // Unchanged cells rewritten rather than jumped over
+    private static final int CELL_COLUMNS = 2;       // Every character is followed by a space
+    private static final int MAX_SINGLE_BYTE_CHAR = 127;
+    private static final int DECIMAL_BASE = 10;
+    private static final byte SPACE = ' ';
+
+    private final OutputStream target;      // The stream to write to, or null for System.out
+    private final boolean paced;            // Whether each frame is held for its delay
+    private final boolean delta;            // Whether frames after the first write changed cells only
+    private final byte[] lineSeparator = System.lineSeparator().getBytes();
+    private final int maxCharBytes = (int) Math.ceil(Charset.defaultCharset().newEncoder().maxBytesPerChar());
+    private OutputStream out;               // The stream used between begin and end
+    private byte[] buffer = new byte[0];
+    private int position;                   // Number of bytes waiting in the buffer
+    private long deadline;                  // System.nanoTime at which the next frame is due
+    private char[][] previousChars;         // The frame on screen in delta mode, null before the first
+    private final byte[] digits = new byte[DECIMAL_BASE];   // Scratch for writing cursor positions
+
+    /**
+     * Constructs an output to System.out.
+     * @param paced Whether each frame is held for its delay
+     */
+    public TerminalAnimationOutput(boolean paced) {
+        this(null, paced);
+    }
+
+    /**
+     * Constructs an output to the given stream.
+     * @param target The stream to write to
+     * @param paced Whether each frame is held for its delay
+     */
+    public TerminalAnimationOutput(OutputStream target, boolean paced) {
+        this(target, paced, false);
+    }
+
+    /**
+     * Constructs an output to the given stream that can write only the cells that changed.
+     * @param target The stream to write to, or null for System.out
+     * @param paced Whether each frame is held for its delay
+     * @param delta Whether frames after the first write only the cells that changed
+     */
+    public TerminalAnimationOutput(OutputStream target, boolean paced, boolean delta) {
+        this.target = target;
+        this.paced = paced;
+        this.delta = delta;
+    }
+
+    @Override
+    public void begin(int width, int height) {
+        System.out.flush();
+        out = target != null ? target : System.out;
+        // Room for a whole frame and the control sequences, so each frame is written with one call;
+        // a delta frame may position the cursor before every cell
+        int cellBytes = maxCharBytes + 1 + (delta ? MAX_CURSOR_POSITION_BYTES : 0);
+        buffer = new byte[HIDE_CURSOR.length + CLEAR_SCREEN.length + CURSOR_HOME.length + SHOW_CURSOR.length +
+                MAX_CURSOR_POSITION_BYTES + height * (width * cellBytes + lineSeparator.length)];
+        position = 0;
+        previousChars = null;
+        append(HIDE_CURSOR);
+        append(CLEAR_SCREEN);
+        deadline = System.nanoTime();
+    }
+
+    @Override
+    public void frame(char[][] chars, int delay) {
+        if (delta && previousChars != null) {
+            appendChangedCells(chars);
+        } else {
+            append(CURSOR_HOME);
+            for (char[] row : chars) {
+                for (char character : row) {
+                    appendCell(character);
+                }
+                append(lineSeparator);
+            }
+            if (delta) {
+                previousChars = new char[chars.length][];
+                for (int rowIndex = 0; rowIndex < chars.length; rowIndex++) {
+                    previousChars[rowIndex] = chars[rowIndex].clone();
+                }
+            }
+        }
+        waitForDeadline();
+        flushBuffer();
+        deadline += TimeUnit.MILLISECONDS.toNanos(delay);
+    }
+
+    @Override
+    public void end() {
+        waitForDeadline();
+        if (previousChars != null) {
+            // Leave the cursor below the animation, where a full frame would have left it
+            appendCursorPosition(previousChars.length + 1, 1);
+            previousChars = null;
+        }
+        append(SHOW_CURSOR);
+        flushBuffer();
+    }
+
+    /**
+     * Appends the cells that differ from the previous frame, and records them as shown.
+     * Runs of changed cells are written after one cursor positioning sequence; short gaps of
+     * unchanged cells between them are rewritten, which is cheaper than moving the cursor.
+     */
+    private void appendChangedCells(char[][] chars) {
+        for (int rowIndex = 0; rowIndex < chars.length; rowIndex++) {
+            char[] row = chars[rowIndex];
+            char[] previousRow = previousChars[rowIndex];
+            int column = 0;
+            while (column < row.length) {
+                if (row[column] == previousRow[column]) {
+                    column++;
+                    continue;
+                }
+                int runStart = column;
+                int runEnd = column + 1;    // Exclusive end of the run, just after its last changed cell
+                for (int next = runEnd; next < row.length && next - runEnd <= MAX_SKIPPED_CELLS; next++) {
+                    if (row[next] != previousRow[next]) {
+                        runEnd = next + 1;
+                    }
+                }
+                appendCursorPosition(rowIndex + 1, runStart * CELL_COLUMNS + 1);
+                for (int cell = runStart; cell < runEnd; cell++) {
+                    appendCell(row[cell]);
+                }
+                column = runEnd;
+            }
+            System.arraycopy(row, 0, previousRow, 0, row.length);
+        }
+    }
+
+    /**
+     * Appends one character and the space that follows it.
+     */
+    private void appendCell(char character) {
+        if (character > MAX_SINGLE_BYTE_CHAR) {
+            append(String.valueOf(character).getBytes(Charset.defaultCharset()));
+        } else {
+            buffer[position++] = (byte) character;
+        }
+        buffer[position++] = SPACE;
+    }
+
+    /**
+     * Appends the sequence that moves the cursor to a 1-based row and column.
+     */
+    private void appendCursorPosition(int row, int column) {
+        append(CURSOR_POSITION_START);
+        appendDecimal(row);
+        buffer[position++] = CURSOR_POSITION_SEPARATOR;
+        appendDecimal(column);
+        buffer[position++] = CURSOR_POSITION_END;
+    }
+
+    /**
+     * Appends a positive number in decimal without creating a string.
+     */
+    private void appendDecimal(int number) {
+        int length = 0;
+        do {
+            digits[length++] = (byte) ('0' + number % DECIMAL_BASE);
+            number /= DECIMAL_BASE;
+        } while (number > 0);
+        while (length > 0) {
+            buffer[position++] = digits[--length];
+        }
+    }
+
+    /**
+     * Appends bytes to the buffer; begin sized it for a whole frame.
+     */
+    private void append(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Sleeps until the current frame is due, when paced.
+     */
+    private void waitForDeadline() {
+        if (!paced) {
+            return;
+        }
+        long remaining = deadline - System.nanoTime();
+        if (remaining > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } else {
+            // Behind schedule: restart the clock instead of rushing the following frames
+            deadline = System.nanoTime();
+        }
+    }
+
+    /**
+     * Writes the buffered bytes to the stream and empties the buffer.
+     */
+    private void flushBuffer() {
+        try {
+            out.write(buffer, 0, position);
+            out.flush();
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write to the console");
+        }
+        position = 0;
+    }
+}
@@ -0,0 +1,251 @@
+package image;
+
+import metrics.Metrics;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A bounded, thread-safe cache of tile brightness grids.
+ * Entries are keyed by image identity and resolution, so several resolutions of the
+ * same image can be cached at once. The cache also keeps each image's summed-area table,
+ * and derives a grid from the cached grid of twice the resolution by 2x2 summing when one
+ * is available. Entries are kept in access order, and the least recently used ones are
+ * evicted once the memory cap is exceeded; by default the cap is a quarter of the maximum
+ * heap, so several resolutions of a large image fit. Images are only weakly referenced by
+ * the cache keys, and the entries of collected images are dropped on the next insert.
+ * @author Salah Mahmied
+ */
+public class BrightnessCache {
+
+    private static final int HEAP_SHARE_DIVISOR = 4;    // The default cap is the maximum heap divided by this
+
+    /** The default memory cap, in bytes: a quarter of the maximum heap. */
+    public static final long DEFAULT_MAX_BYTES = Runtime.getRuntime().maxMemory() / HEAP_SHARE_DIVISOR;
+
+    private static final int TABLE_RESOLUTION = 0;      // Key resolution under which the table is stored
+    private static final int DOWNSCALE_FACTOR = 2;      // Ratio between a grid and the finer grid it derives from
+    private static final int GRID_CELL_BYTES = Long.BYTES + Double.BYTES; // Sum and brightness per tile
+
+    private final long maxBytes;
+    private final LinkedHashMap<CacheKey, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ReferenceQueue<Image> collectedImages = new ReferenceQueue<>();
+    private long usedBytes;
+
+    /**
+     * Constructs a cache with the default memory cap.
+     */
+    public BrightnessCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructs a cache with the given memory cap.
+     * @param maxBytes The approximate maximum number of bytes held by cached entries
+     */
+    public BrightnessCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the brightness of every tile of the image at the given resolution,
+     * computing and caching it if necessary.
+     * The returned array is shared between callers and must not be modified.
+     * @param image The (padded) image to measure
+     * @param resolution The number of tiles along the width dimension
+     * @return A 2D array of tile brightness values, indexed [tileRow][tileColumn]
+     */
+    public double[][] getBrightness(Image image, int resolution) {
+        return getBrightness(image, resolution, null);
+    }
+
+    /**
+     * Gets the brightness of every tile of the image at the given resolution, using the
+     * given pool for any computation needed on a cache miss.
+     * The returned array is shared between callers and must not be modified.
+     * @param image The (padded) image to measure
+     * @param resolution The number of tiles along the width dimension
+     * @param pool The pool to compute on, or null to compute on the calling thread
+     * @return A 2D array of tile brightness values, indexed [tileRow][tileColumn]
+     */
+    public double[][] getBrightness(Image image, int resolution, ForkJoinPool pool) {
+        return getGrid(image, resolution, pool).brightness;
+    }
+
+    /**
+     * Removes every entry from the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Gets the approximate number of bytes currently held by cached entries.
+     * @return The cache footprint in bytes
+     */
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Looks up a grid, deriving it from a finer grid or the summed-area table on a miss.
+     * Heavy work is done outside the lock; concurrent misses may compute the same grid twice.
+     */
+    private TileGrid getGrid(Image image, int resolution, ForkJoinPool pool) {
+        TileGrid grid = (TileGrid) lookup(image, resolution);
+        if (grid != null) {
+            Metrics.count(Metrics.Counter.BRIGHTNESS_CACHE_HITS, 1);
+            return grid;
+        }
+        Metrics.count(Metrics.Counter.BRIGHTNESS_CACHE_MISSES, 1);
+
+        int tileSize = image.getWidth() / resolution;
+        TileGrid finerGrid = null;
+        if (image.getWidth() % (resolution * DOWNSCALE_FACTOR) == 0) {
+            finerGrid = (TileGrid) lookup(image, resolution * DOWNSCALE_FACTOR);
+        }
+
+        if (finerGrid != null) {
+            grid = new TileGrid(downscale(finerGrid.sums, image.getHeight() / tileSize, resolution), tileSize);
+        } else {
+            grid = new TileGrid(getTable(image, pool).getTileSums(resolution, pool), tileSize);
+        }
+        store(image, resolution, grid, grid.sizeInBytes());
+        return grid;
+    }
+
+    /**
+     * Gets the summed-area table of the image, building and caching it on a miss.
+     */
+    private BrightnessTable getTable(Image image, ForkJoinPool pool) {
+        BrightnessTable table = (BrightnessTable) lookup(image, TABLE_RESOLUTION);
+        if (table == null) {
+            table = new BrightnessTable(image, pool);
+            store(image, TABLE_RESOLUTION, table, table.getSizeInBytes());
+        }
+        return table;
+    }
+
+    /**
+     * Sums each 2x2 block of a finer grid into one tile of a coarser grid.
+     */
+    private static long[][] downscale(long[][] finerSums, int rowsNumber, int columnsNumber) {
+        long[][] sums = new long[rowsNumber][columnsNumber];
+        for (int rowIndex = 0; rowIndex < rowsNumber; rowIndex++) {
+            long[] upperRow = finerSums[rowIndex * DOWNSCALE_FACTOR];
+            long[] lowerRow = finerSums[rowIndex * DOWNSCALE_FACTOR + 1];
+            for (int columnIndex = 0; columnIndex < columnsNumber; columnIndex++) {
+                int finerColumn = columnIndex * DOWNSCALE_FACTOR;
+                sums[rowIndex][columnIndex] = upperRow[finerColumn] + upperRow[finerColumn + 1] +
+                        lowerRow[finerColumn] + lowerRow[finerColumn + 1];
+            }
+        }
+        return sums;
+    }
+
+    private synchronized Object lookup(Image image, int resolution) {
+        return entries.get(new CacheKey(image, resolution, null));
+    }
+
+    /**
+     * Inserts an entry and evicts least recently used entries until the cap is respected.
+     * The newly inserted entry itself is never evicted. Only the evicted entries are visited.
+     */
+    private synchronized void store(Image image, int resolution, Object value, long sizeInBytes) {
+        CacheKey key = new CacheKey(image, resolution, collectedImages);
+        key.sizeInBytes = sizeInBytes;
+        if (entries.containsKey(key)) {
+            return;
+        }
+        entries.put(key, value);
+        usedBytes += sizeInBytes;
+
+        // Drop entries of images that were garbage collected, then the least recently used ones
+        for (Reference<? extends Image> collected = collectedImages.poll(); collected != null;
+             collected = collectedImages.poll()) {
+            CacheKey collectedKey = ((KeyReference) collected).key;
+            if (entries.remove(collectedKey) != null) {
+                usedBytes -= collectedKey.sizeInBytes;
+            }
+        }
+        Iterator<CacheKey> eldestFirst = entries.keySet().iterator();
+        while (usedBytes > maxBytes && eldestFirst.hasNext()) {
+            CacheKey eldest = eldestFirst.next();
+            if (eldest != key) {
+                usedBytes -= eldest.sizeInBytes;
+                eldestFirst.remove();
+            }
+        }
+    }
+
+    /**
+     * A cached brightness grid, kept both as exact luma sums and as normalized brightness.
+     */
+    private static final class TileGrid {
+        private final long[][] sums;
+        private final double[][] brightness;
+
+        private TileGrid(long[][] sums, int tileSize) {
+            this.sums = sums;
+            this.brightness = BrightnessTable.toBrightness(sums, tileSize);
+        }
+
+        private long sizeInBytes() {
+            return (long) sums.length * sums[0].length * GRID_CELL_BYTES;
+        }
+    }
+
+    /**
+     * Identifies an entry by image identity and resolution, without keeping the image alive.
+     * Keys of stored entries register their reference with a queue, so the entry can be
+     * found and dropped once the image is collected; lookup keys register none.
+     */
+    private static final class CacheKey {
+        private final KeyReference image;
+        private final int imageHash;
+        private final int resolution;
+        private long sizeInBytes;
+
+        private CacheKey(Image image, int resolution, ReferenceQueue<Image> queue) {
+            this.image = new KeyReference(image, queue, this);
+            this.imageHash = System.identityHashCode(image);
+            this.resolution = resolution;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey otherKey = (CacheKey) other;
+            Image referent = image.get();
+            return resolution == otherKey.resolution && referent != null &&
+                    referent == otherKey.image.get();
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * imageHash + resolution;
+        }
+    }
+
+    /**
+     * A weak reference to a key's image that leads back to the key once it is enqueued.
+     */
+    private static final class KeyReference extends WeakReference<Image> {
+        private final CacheKey key;
+
+        private KeyReference(Image image, ReferenceQueue<Image> queue, CacheKey key) {
+            super(image, queue);
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package image;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A summed-area table (integral image) of grayscale luma values.
+ * The table is built once per image in a single pass over the pixels; afterwards the
+ * average brightness of any rectangular region is computed with four lookups,
+ * independent of the region's size.
+ * @author Salah Mahmied
+ */
+public class BrightnessTable {
+
+    private static final int MAX_RGB_VALUE = 255;   // Maximum RGB component value
+
+    // Prefix sums of scaled luma, (height + 1) x (width + 1) in row-major order.
+    // Entry (r, c) holds the sum of all pixels above and to the left of (r, c).
+    private final long[] sums;
+    private final int width;    // Width of the source image in pixels
+    private final int height;   // Height of the source image in pixels
+
+    /**
+     * Builds the summed-area table of the given image.
+     * @param image The image to index
+     */
+    public BrightnessTable(Image image) {
+        this(image, null);
+    }
+
+    /**
+     * Builds the summed-area table of the given image, splitting the work into row and
+     * column bands on the given pool.
+     * @param image The image to index
+     * @param pool The pool to build the table on, or null to build it on the calling thread
+     */
+    public BrightnessTable(Image image, ForkJoinPool pool) {
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        int tableWidth = width + 1;
+        this.sums = new long[tableWidth * (height + 1)];
+
+        if (pool == null || pool.getParallelism() <= 1) {
+            // Each entry is the running sum of its row plus the entry directly above it
+            int[] lumas = new int[width];
+            for (int rowIndex = 0; rowIndex < height; rowIndex++) {
+                long rowSum = 0;
+                image.copyScaledLumaRow(rowIndex, 0, width, lumas);
+                int tableRow = (rowIndex + 1) * tableWidth;
+                for (int columnIndex = 0; columnIndex < width; columnIndex++) {
+                    rowSum += lumas[columnIndex];
+                    sums[tableRow + columnIndex + 1] = sums[tableRow - tableWidth + columnIndex + 1] + rowSum;
+                }
+            }
+            return;
+        }
+
+        // First pass: independent running sums along each row
+        RowBands.forEachBand(pool, height, (fromRow, toRow) -> {
+            int[] lumas = new int[width];
+            for (int rowIndex = fromRow; rowIndex < toRow; rowIndex++) {
+                long rowSum = 0;
+                image.copyScaledLumaRow(rowIndex, 0, width, lumas);
+                int tableRow = (rowIndex + 1) * tableWidth;
+                for (int columnIndex = 0; columnIndex < width; columnIndex++) {
+                    rowSum += lumas[columnIndex];
+                    sums[tableRow + columnIndex + 1] = rowSum;
+                }
+            }
+        });
+        // Second pass: accumulate down the columns, one band of columns per task
+        RowBands.forEachBand(pool, width, (fromColumn, toColumn) -> {
+            for (int rowIndex = 2; rowIndex <= height; rowIndex++) {
+                int tableRow = rowIndex * tableWidth;
+                for (int columnIndex = fromColumn + 1; columnIndex <= toColumn; columnIndex++) {
+                    sums[tableRow + columnIndex] += sums[tableRow - tableWidth + columnIndex];
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the width of the indexed image in pixels.
+     * @return The image width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the indexed image in pixels.
+     * @return The image height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Calculates the average brightness of a rectangular region (normalized to 0-1 range).
+     * @param row Top row of the region
+     * @param column Left column of the region
+     * @param regionHeight Height of the region in pixels
+     * @param regionWidth Width of the region in pixels
+     * @return The average brightness value between 0 (dark) and 1 (bright)
+     */
+    public double getRegionBrightness(int row, int column, int regionHeight, int regionWidth) {
+        long sum = regionSum(row, column, row + regionHeight, column + regionWidth);
+        return toBrightness(sum, (long) regionWidth * regionHeight);
+    }
+
+    /**
+     * Calculates the brightness of every square tile when the image is split into
+     * the given number of tiles per row, matching {@link ImageEditor#getSubImages}.
+     * @param resolution The number of tiles along the width dimension
+     * @return A 2D array of tile brightness values, indexed [tileRow][tileColumn]
+     */
+    public double[][] getTileBrightness(int resolution) {
+        int tileSize = width / resolution;
+        return toBrightness(getTileSums(resolution), tileSize);
+    }
+
+    /**
+     * Calculates the summed scaled luma of every square tile when the image is split into
+     * the given number of tiles per row. Sums are exact, so they can be combined freely.
+     * @param resolution The number of tiles along the width dimension
+     * @return A 2D array of tile luma sums, indexed [tileRow][tileColumn]
+     */
+    public long[][] getTileSums(int resolution) {
+        return getTileSums(resolution, null);
+    }
+
+    /**
+     * Calculates the summed scaled luma of every square tile, processing bands of tile rows
+     * on the given pool.
+     * @param resolution The number of tiles along the width dimension
+     * @param pool The pool to compute on, or null to compute on the calling thread
+     * @return A 2D array of tile luma sums, indexed [tileRow][tileColumn]
+     */
+    public long[][] getTileSums(int resolution, ForkJoinPool pool) {
+        int tileSize = width / resolution;
+        int rowsNumber = height / tileSize;
+        long[][] tileSums = new long[rowsNumber][resolution];
+        RowBands.forEachBand(pool, rowsNumber, (fromRow, toRow) -> {
+            for (int rowIndex = fromRow; rowIndex < toRow; rowIndex++) {
+                for (int columnIndex = 0; columnIndex < resolution; columnIndex++) {
+                    int top = rowIndex * tileSize;
+                    int left = columnIndex * tileSize;
+                    tileSums[rowIndex][columnIndex] = regionSum(top, left, top + tileSize, left + tileSize);
+                }
+            }
+        });
+        return tileSums;
+    }
+
+    /**
+     * Converts a sum of scaled luma values to an average brightness (normalized to 0-1 range).
+     * @param sum The summed scaled luma of a region
+     * @param pixelCount The number of pixels in the region
+     * @return The average brightness value between 0 (dark) and 1 (bright)
+     */
+    public static double toBrightness(long sum, long pixelCount) {
+        return (double) sum / (pixelCount * MAX_RGB_VALUE * Image.LUMA_SCALE);
+    }
+
+    /**
+     * Converts a grid of square tile luma sums to tile brightness values.
+     * @param tileSums The summed scaled luma of each tile
+     * @param tileSize Side length of each tile in pixels
+     * @return A 2D array of tile brightness values with the same shape as tileSums
+     */
+    public static double[][] toBrightness(long[][] tileSums, int tileSize) {
+        long pixelCount = (long) tileSize * tileSize;
+        double[][] brightness = new double[tileSums.length][];
+        for (int rowIndex = 0; rowIndex < tileSums.length; rowIndex++) {
+            brightness[rowIndex] = new double[tileSums[rowIndex].length];
+            for (int columnIndex = 0; columnIndex < tileSums[rowIndex].length; columnIndex++) {
+                brightness[rowIndex][columnIndex] = toBrightness(tileSums[rowIndex][columnIndex], pixelCount);
+            }
+        }
+        return brightness;
+    }
+
+    /**
+     * Estimates the heap footprint of the table.
+     * @return The approximate size of the table in bytes
+     */
+    public long getSizeInBytes() {
+        return (long) sums.length * Long.BYTES;
+    }
+
+    /**
+     * Sums the scaled luma of the half-open region [top, bottom) x [left, right).
+     */
+    private long regionSum(int top, int left, int bottom, int right) {
+        int tableWidth = width + 1;
+        return sums[bottom * tableWidth + right] - sums[top * tableWidth + right]
+                - sums[bottom * tableWidth + left] + sums[top * tableWidth + left];
+    }
+}
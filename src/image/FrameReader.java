@@ -0,0 +1,352 @@
+package image;
+
+import metrics.Metrics;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * Reads the frames of an animation: an animated GIF, or a directory of numbered still images.
+ * GIF frames are composited onto a canvas of the animation's logical size, honoring each
+ * frame's position, transparency and disposal method, so every frame read is a complete picture.
+ * Frames are copied into buffers supplied by the caller, which can therefore be recycled;
+ * transparent pixels read as white, like padding.
+ * @author Salah Mahmied
+ */
+public class FrameReader implements Closeable {
+
+    private static final String GIF_FORMAT = "gif";
+    private static final String GIF_IMAGE_METADATA_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String GIF_STREAM_METADATA_FORMAT = "javax_imageio_gif_stream_1.0";
+    private static final String IMAGE_DESCRIPTOR_NODE = "ImageDescriptor";
+    private static final String GRAPHIC_CONTROL_NODE = "GraphicControlExtension";
+    private static final String SCREEN_DESCRIPTOR_NODE = "LogicalScreenDescriptor";
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+    private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+    private static final String NO_DISPOSAL = "none";
+    private static final int FIRST_IMAGE_INDEX = 0;
+    private static final int MILLIS_PER_CENTISECOND = 10;      // GIF delays are in hundredths of a second
+    private static final int MIN_GIF_DELAY = 2;                // Shorter delays are played at the default
+    private static final int DEFAULT_GIF_DELAY = 10;           // The delay browsers use for those, in 1/100 s
+    private static final int ALPHA_SHIFT = 24;
+    private static final int WHITE_COLOR_VALUES = 0xFFFFFFFF;  // Packed ARGB white, read for transparent pixels
+    private static final int TRANSPARENT = 0;
+
+    private final int width;            // Width of every frame in pixels
+    private final int height;           // Height of every frame in pixels
+    private final int directoryDelay;   // Delay of every frame of a directory, in milliseconds
+
+    // GIF state; null when reading a directory
+    private final ImageInputStream inputStream;
+    private final ImageReader reader;
+    private int[] canvas;               // The composited picture, in non-premultiplied ARGB
+    private int[] savedCanvas;          // The canvas before the last frame, for restoreToPrevious
+    private int[] framePixels;          // The last decoded GIF frame before compositing
+    private String disposal = NO_DISPOSAL;  // How to dispose of the last frame before the next one
+    private int disposalLeft, disposalTop, disposalWidth, disposalHeight;
+
+    // Directory state; null when reading a GIF
+    private final List<Path> framePaths;
+
+    private int nextFrame;              // Index of the next frame to read
+    private int frameDelay;             // Delay of the last frame read, in milliseconds
+
+    /**
+     * Opens an animation. A GIF has its first frame's header decoded; a directory has its
+     * image files listed in numeric order of the numbers in their names, and its first frame
+     * decoded to find the frame size.
+     * @param path Path of a GIF file or of a directory of frames
+     * @param directoryDelay The delay of each frame of a directory, in milliseconds
+     * @throws IOException If the animation cannot be opened or holds no frames
+     */
+    public FrameReader(String path, int directoryDelay) throws IOException {
+        this.directoryDelay = directoryDelay;
+        Path sourcePath = Paths.get(path);
+        if (Files.isDirectory(sourcePath)) {
+            this.inputStream = null;
+            this.reader = null;
+            this.framePaths = listFrames(sourcePath);
+            if (framePaths.isEmpty()) {
+                throw new IOException("No frames found in " + path);
+            }
+            BufferedImage first = readFrameFile(framePaths.get(FIRST_IMAGE_INDEX));
+            this.width = first.getWidth();
+            this.height = first.getHeight();
+            return;
+        }
+
+        this.framePaths = null;
+        this.inputStream = ImageIO.createImageInputStream(new File(path));
+        if (inputStream == null) {
+            throw new IOException("Cannot open animation: " + path);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName(GIF_FORMAT);
+        this.reader = readers.next();
+        reader.setInput(inputStream, false, false);
+        try {
+            // The canvas is the logical screen, grown to hold the first frame if it is smaller
+            Node screen = findNode(reader.getStreamMetadata(), GIF_STREAM_METADATA_FORMAT, SCREEN_DESCRIPTOR_NODE);
+            Node descriptor = findNode(reader.getImageMetadata(FIRST_IMAGE_INDEX), GIF_IMAGE_METADATA_FORMAT,
+                    IMAGE_DESCRIPTOR_NODE);
+            this.width = Math.max(intAttribute(screen, "logicalScreenWidth"),
+                    intAttribute(descriptor, "imageLeftPosition") + intAttribute(descriptor, "imageWidth"));
+            this.height = Math.max(intAttribute(screen, "logicalScreenHeight"),
+                    intAttribute(descriptor, "imageTopPosition") + intAttribute(descriptor, "imageHeight"));
+        } catch (IOException | IndexOutOfBoundsException e) {
+            close();
+            throw new IOException("Not a readable GIF animation: " + path);
+        }
+        if (width <= 0 || height <= 0) {
+            close();
+            throw new IOException("Not a readable GIF animation: " + path);
+        }
+        this.canvas = new int[width * height];
+        this.savedCanvas = new int[width * height];
+    }
+
+    /**
+     * Gets the width of every frame in pixels.
+     * @return The frame width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of every frame in pixels.
+     * @return The frame height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets how long the last frame read is shown.
+     * @return The delay in milliseconds
+     */
+    public int getFrameDelay() {
+        return frameDelay;
+    }
+
+    /**
+     * Reads the next frame into a buffer of width x height packed ARGB values, row-major.
+     * @param destination The buffer to fill
+     * @return false if there are no more frames, in which case the buffer is unchanged
+     * @throws IOException If the frame cannot be decoded or a directory frame has another size
+     */
+    public boolean readFrame(int[] destination) throws IOException {
+        long startTime = Metrics.now();
+        boolean read = framePaths != null ? readDirectoryFrame(destination) : readGifFrame(destination);
+        if (read) {
+            nextFrame++;
+            Metrics.record(Metrics.Stage.DECODE, startTime);
+        }
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.dispose();
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Decodes the next file of a frame directory.
+     */
+    private boolean readDirectoryFrame(int[] destination) throws IOException {
+        if (nextFrame >= framePaths.size()) {
+            return false;
+        }
+        Path framePath = framePaths.get(nextFrame);
+        BufferedImage frame = readFrameFile(framePath);
+        if (frame.getWidth() != width || frame.getHeight() != height) {
+            throw new IOException(String.format("Frame %s is %dx%d, expected %dx%d", framePath,
+                    frame.getWidth(), frame.getHeight(), width, height));
+        }
+        frame.getRGB(0, 0, width, height, destination, 0, width);
+        whitenTransparentPixels(destination);
+        frameDelay = directoryDelay;
+        return true;
+    }
+
+    /**
+     * Decodes the next GIF frame and composites it onto the canvas.
+     */
+    private boolean readGifFrame(int[] destination) throws IOException {
+        BufferedImage frame;
+        IIOMetadata metadata;
+        try {
+            frame = reader.read(nextFrame);
+            metadata = reader.getImageMetadata(nextFrame);
+        } catch (IndexOutOfBoundsException e) {
+            return false;
+        }
+        disposePreviousFrame();
+
+        Node descriptor = findNode(metadata, GIF_IMAGE_METADATA_FORMAT, IMAGE_DESCRIPTOR_NODE);
+        Node control = findNode(metadata, GIF_IMAGE_METADATA_FORMAT, GRAPHIC_CONTROL_NODE);
+        int frameLeft = intAttribute(descriptor, "imageLeftPosition");
+        int frameTop = intAttribute(descriptor, "imageTopPosition");
+        int frameWidth = frame.getWidth();
+        int frameHeight = frame.getHeight();
+        String disposalMethod = stringAttribute(control, "disposalMethod");
+        disposal = disposalMethod != null ? disposalMethod : NO_DISPOSAL;
+        int delay = control != null ? intAttribute(control, "delayTime") : DEFAULT_GIF_DELAY;
+        frameDelay = (delay < MIN_GIF_DELAY ? DEFAULT_GIF_DELAY : delay) * MILLIS_PER_CENTISECOND;
+        if (disposal.equals(RESTORE_TO_PREVIOUS)) {
+            System.arraycopy(canvas, 0, savedCanvas, 0, canvas.length);
+        }
+
+        // Draw the frame's opaque pixels over the canvas, clipped to it
+        if (framePixels == null || framePixels.length < frameWidth * frameHeight) {
+            framePixels = new int[frameWidth * frameHeight];
+        }
+        frame.getRGB(0, 0, frameWidth, frameHeight, framePixels, 0, frameWidth);
+        disposalLeft = Math.max(0, frameLeft);
+        disposalTop = Math.max(0, frameTop);
+        // A frame wholly outside the canvas covers, and later disposes of, nothing
+        disposalWidth = Math.max(0, Math.min(width, frameLeft + frameWidth) - disposalLeft);
+        disposalHeight = Math.max(0, Math.min(height, frameTop + frameHeight) - disposalTop);
+        for (int row = disposalTop; row < disposalTop + disposalHeight; row++) {
+            int frameIndex = (row - frameTop) * frameWidth + disposalLeft - frameLeft;
+            int canvasIndex = row * width + disposalLeft;
+            for (int column = 0; column < disposalWidth; column++) {
+                int argb = framePixels[frameIndex + column];
+                if (argb >>> ALPHA_SHIFT != TRANSPARENT) {
+                    canvas[canvasIndex + column] = argb;
+                }
+            }
+        }
+
+        System.arraycopy(canvas, 0, destination, 0, canvas.length);
+        whitenTransparentPixels(destination);
+        return true;
+    }
+
+    /**
+     * Disposes of the last GIF frame as its disposal method asks, before the next is drawn.
+     */
+    private void disposePreviousFrame() {
+        if (disposal.equals(RESTORE_TO_BACKGROUND)) {
+            // The background is treated as transparent, as browsers do
+            for (int row = disposalTop; row < disposalTop + disposalHeight; row++) {
+                Arrays.fill(canvas, row * width + disposalLeft, row * width + disposalLeft + disposalWidth,
+                        TRANSPARENT);
+            }
+        } else if (disposal.equals(RESTORE_TO_PREVIOUS)) {
+            System.arraycopy(savedCanvas, 0, canvas, 0, canvas.length);
+        }
+    }
+
+    /**
+     * Replaces fully transparent pixels with white.
+     */
+    private static void whitenTransparentPixels(int[] pixels) {
+        for (int index = 0; index < pixels.length; index++) {
+            if (pixels[index] >>> ALPHA_SHIFT == TRANSPARENT) {
+                pixels[index] = WHITE_COLOR_VALUES;
+            }
+        }
+    }
+
+    /**
+     * Decodes one frame file of a directory.
+     */
+    private static BufferedImage readFrameFile(Path framePath) throws IOException {
+        BufferedImage frame = ImageIO.read(framePath.toFile());
+        if (frame == null) {
+            throw new IOException("Unsupported image format: " + framePath);
+        }
+        return frame;
+    }
+
+    /**
+     * Lists the readable image files of a directory, ordered by the first number in their
+     * names (so frame2 comes before frame10), and by name between equal numbers.
+     */
+    private static List<Path> listFrames(Path directory) throws IOException {
+        Set<String> imageSuffixes = new HashSet<>();
+        for (String suffix : ImageIO.getReaderFileSuffixes()) {
+            imageSuffixes.add(suffix.toLowerCase(Locale.ROOT));
+        }
+        List<Path> frames = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                String suffix = name.substring(name.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+                if (Files.isRegularFile(entry) && imageSuffixes.contains(suffix)) {
+                    frames.add(entry);
+                }
+            }
+        }
+        frames.sort(Comparator.comparingLong((Path frame) -> frameNumber(frame.getFileName().toString()))
+                .thenComparing(Comparator.naturalOrder()));
+        return frames;
+    }
+
+    /**
+     * Gets the first run of digits in a file name as a number, or -1 if there is none.
+     */
+    private static long frameNumber(String name) {
+        long number = -1;
+        for (int index = 0; index < name.length(); index++) {
+            char character = name.charAt(index);
+            if (Character.isDigit(character)) {
+                number = Math.max(number, 0) * 10 + Character.digit(character, 10);
+            } else if (number >= 0) {
+                break;
+            }
+        }
+        return number;
+    }
+
+    /**
+     * Finds a child node of a metadata tree in the given native format, or null.
+     */
+    private static Node findNode(IIOMetadata metadata, String format, String name) {
+        if (metadata == null) {
+            return null;
+        }
+        for (Node node = metadata.getAsTree(format).getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node.getNodeName().equals(name)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets an attribute of a metadata node, or null when the node or attribute is missing.
+     */
+    private static String stringAttribute(Node node, String name) {
+        if (node == null) {
+            return null;
+        }
+        NamedNodeMap attributes = node.getAttributes();
+        Node attribute = attributes == null ? null : attributes.getNamedItem(name);
+        return attribute == null ? null : attribute.getNodeValue();
+    }
+
+    /**
+     * Gets a numeric attribute of a metadata node, or 0 when the node or attribute is missing.
+     */
+    private static int intAttribute(Node node, String name) {
+        String value = stringAttribute(node, name);
+        return value == null ? 0 : Integer.parseInt(value);
+    }
+}
@@ -1,22 +1,62 @@
 package image;
 
+import metrics.Metrics;
+
 import javax.imageio.ImageIO;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
 
 /**
- * Represents an image with pixel data stored as a 2D array of Color objects.
+ * Represents an image with pixel data stored as a flat array of packed ARGB integers.
  * Provides functionality to load, access, and save image data.
+ * An image can also be a padded view of another image: the source pixels are shared, and
+ * pixels outside the source bounds read as white without being stored.
+ * An image can be decoded subsampled for a known maximum resolution, keeping only as many
+ * pixels as the tiles of that resolution need; {@link #getSampleStep} reports the factor.
+ * An image loaded through {@link LumaCache} is backed by a memory-mapped luma plane instead:
+ * brightness is read from the mapping, and the pixels are decoded only if colors are needed.
  * @author Salah Mahmied
  */
 public class Image {
 
-    // The 2D array storing pixel color data (row-major order: [height][width])
-    private final Color[][] pixelArray;
-    private final int width;    // Width of the image in pixels
-    private final int height;   // Height of the image in pixels
+    // Constants for unpacking ARGB values and grayscale conversion
+    private static final int RED_SHIFT = 16;                     // Bit offset of the red channel
+    private static final int GREEN_SHIFT = 8;                    // Bit offset of the green channel
+    private static final int CHANNEL_MASK = 0xFF;                // Mask for a single color channel
+    private static final double GREY_SCALE_RED_FACTOR = 0.2126;  // Red coefficient for grayscale conversion
+    private static final double GREY_SCALE_GREEN_FACTOR = 0.7152;// Green coefficient for grayscale conversion
+    private static final double GREY_SCALE_BLUE_FACTOR = 0.0722; // Blue coefficient for grayscale conversion
+    private static final int SCALED_RED_FACTOR = 2126;           // Red coefficient scaled by LUMA_SCALE
+    private static final int SCALED_GREEN_FACTOR = 7152;         // Green coefficient scaled by LUMA_SCALE
+    private static final int SCALED_BLUE_FACTOR = 722;           // Blue coefficient scaled by LUMA_SCALE
+
+    private static final int WHITE_COLOR_VALUES = 0xFFFFFFFF;    // Packed ARGB white, read outside the source
+    private static final int WHITE_SCALED_LUMA = scaledLumaOf(WHITE_COLOR_VALUES);
+    private static final double WHITE_LUMA = lumaOf(WHITE_COLOR_VALUES);
+    private static final int SIDES_NUMBER = 2;                   // Sides a margin is split between
+    private static final int NO_SUBSAMPLING = 1;
+
+    /** The number of decoded pixels per tile side that {@link #Image(String, int)} keeps. */
+    public static final int SAMPLES_PER_TILE = 4;
+
+    /** The factor by which {@link #scaledLumaOf} values exceed {@link #lumaOf} values. */
+    public static final int LUMA_SCALE = 10000;
+
+    // The packed ARGB source pixel data (row-major order: index = row * sourceWidth + col),
+    // or null when the image is backed by a luma plane
+    private final int[] pixels;
+    private final LumaPlane lumaPlane;  // Mapped luma of the stored pixels, or null
+    private final int width;            // Width of the image in pixels
+    private final int height;           // Height of the image in pixels
+    private final int sourceWidth;      // Width of the stored pixels; also the row stride
+    private final int sourceHeight;     // Height of the stored pixels
+    private final int left;             // Column at which the stored pixels start
+    private final int top;              // Row at which the stored pixels start
+    private final int sampleStep;       // Source pixels per stored pixel in each direction
 
     /**
      * Constructs an Image by loading from a file.
@@ -24,18 +64,137 @@ public class Image {
      * @throws IOException If the file cannot be read or is not a valid image
      */
     public Image(String filename) throws IOException {
+        long startTime = Metrics.now();
+        long startAllocated = Metrics.allocatedBytes();
         BufferedImage im = ImageIO.read(new File(filename));
+        if (im == null) {
+            throw new IOException("Unsupported image format: " + filename);
+        }
         width = im.getWidth();
         height = im.getHeight();
+        sourceWidth = width;
+        sourceHeight = height;
+        left = 0;
+        top = 0;
+        sampleStep = NO_SUBSAMPLING;
+        lumaPlane = null;
 
-        // Initialize pixel array and populate with Color objects
-        pixelArray = new Color[height][width];
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                // Note: BufferedImage uses (x,y) while we store as (row,col)
-                pixelArray[row][col] = new Color(im.getRGB(col, row));
-            }
+        // Bulk-read all pixels into the packed array in a single call
+        pixels = im.getRGB(0, 0, width, height, null, 0, width);
+        Metrics.record(Metrics.Stage.DECODE, startTime, startAllocated);
+    }
+
+    /**
+     * Constructs an Image by loading from a file, subsampled while decoding so that at the
+     * given resolution each tile still spans at least {@link #SAMPLES_PER_TILE} decoded pixels
+     * per side. The step is a power of 2, and every step-th pixel of every step-th row is kept,
+     * so a large photo converted at a small resolution is never held in memory at full size.
+     * Images that are already small enough are decoded in full.
+     * @param filename Path to the image file to load
+     * @param maxResolution The highest resolution the image will be converted at
+     * @throws IOException If the file cannot be read or is not a valid image
+     */
+    public Image(String filename, int maxResolution) throws IOException {
+        long startTime = Metrics.now();
+        long startAllocated = Metrics.allocatedBytes();
+        try (ImageStripeReader reader = new ImageStripeReader(filename)) {
+            // A power of 2 step shrinks the padded size by exactly the step, so the tile grid
+            // and the margins are the same as for the full image
+            sampleStep = Math.max(NO_SUBSAMPLING, Integer.highestOneBit(
+                    reader.getWidth() / (Math.max(1, maxResolution) * SAMPLES_PER_TILE)));
+            Image sampled = reader.readStripe(0, reader.getHeight(), sampleStep);
+            pixels = sampled.pixels;
+            width = sampled.width;
+            height = sampled.height;
+        }
+        lumaPlane = null;
+        sourceWidth = width;
+        sourceHeight = height;
+        left = 0;
+        top = 0;
+        Metrics.record(Metrics.Stage.DECODE, startTime, startAllocated);
+    }
+
+    /**
+     * Constructs an Image by decoding an encoded image from a stream.
+     * The stream is read to its end but not closed.
+     * @param input The stream holding the encoded image
+     * @throws IOException If the stream cannot be read or does not hold a valid image
+     */
+    public Image(InputStream input) throws IOException {
+        long startTime = Metrics.now();
+        long startAllocated = Metrics.allocatedBytes();
+        BufferedImage im = ImageIO.read(input);
+        if (im == null) {
+            throw new IOException("Unsupported image format");
         }
+        width = im.getWidth();
+        height = im.getHeight();
+        sourceWidth = width;
+        sourceHeight = height;
+        left = 0;
+        top = 0;
+        sampleStep = NO_SUBSAMPLING;
+        lumaPlane = null;
+        pixels = im.getRGB(0, 0, width, height, null, 0, width);
+        Metrics.record(Metrics.Stage.DECODE, startTime, startAllocated);
+    }
+
+    /**
+     * Constructs an Image from an existing packed ARGB pixel array.
+     * The array is used directly and is not copied.
+     * @param pixels Packed ARGB values in row-major order
+     * @param width Width of the image
+     * @param height Height of the image
+     */
+    public Image(int[] pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+        this.sourceWidth = width;
+        this.sourceHeight = height;
+        this.left = 0;
+        this.top = 0;
+        this.sampleStep = NO_SUBSAMPLING;
+        this.lumaPlane = null;
+    }
+
+    /**
+     * Constructs an Image backed by a luma plane. Its pixels are decoded on first use.
+     * @param lumaPlane The mapped luma of the image
+     * @param width Width of the image
+     * @param height Height of the image
+     */
+    Image(LumaPlane lumaPlane, int width, int height) {
+        this.pixels = null;
+        this.lumaPlane = lumaPlane;
+        this.width = width;
+        this.height = height;
+        this.sourceWidth = width;
+        this.sourceHeight = height;
+        this.left = 0;
+        this.top = 0;
+        this.sampleStep = NO_SUBSAMPLING;
+    }
+
+    /**
+     * Constructs a view of an image centered in a larger white canvas. No pixel is copied:
+     * the view shares the source's pixels, and pixels outside them read as white.
+     * When the margin is odd, the extra column or row goes to the right or bottom.
+     * @param source The image to pad
+     * @param width Width of the canvas, at least the source width
+     * @param height Height of the canvas, at least the source height
+     */
+    Image(Image source, int width, int height) {
+        this.pixels = source.pixels;
+        this.width = width;
+        this.height = height;
+        this.sourceWidth = source.sourceWidth;
+        this.sourceHeight = source.sourceHeight;
+        this.left = source.left + (width - source.width) / SIDES_NUMBER;
+        this.top = source.top + (height - source.height) / SIDES_NUMBER;
+        this.sampleStep = source.sampleStep;
+        this.lumaPlane = source.lumaPlane;
     }
 
     /**
@@ -45,9 +204,20 @@ public class Image {
      * @param height Height of the image
      */
     public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+        this.pixels = new int[width * height];
         this.width = width;
         this.height = height;
+        this.sourceWidth = width;
+        this.sourceHeight = height;
+        this.left = 0;
+        this.top = 0;
+        this.sampleStep = NO_SUBSAMPLING;
+        this.lumaPlane = null;
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                pixels[row * width + col] = pixelArray[row][col].getRGB();
+            }
+        }
     }
 
     /**
@@ -66,8 +236,141 @@ public class Image {
         return height;
     }
 
+    /**
+     * Gets the subsampling factor the image was decoded with.
+     * @return The number of source pixels per image pixel in each direction; 1 if not subsampled
+     */
+    public int getSampleStep() {
+        return sampleStep;
+    }
+
+    /**
+     * Gets the packed ARGB value of a specific pixel.
+     * @param row The row index (vertical position)
+     * @param col The column index (horizontal position)
+     * @return The packed ARGB value at the specified position
+     */
+    public int getRGB(int row, int col) {
+        int sourceRow = row - top;
+        int sourceColumn = col - left;
+        if (sourceRow < 0 || sourceRow >= sourceHeight || sourceColumn < 0 || sourceColumn >= sourceWidth) {
+            return WHITE_COLOR_VALUES;
+        }
+        return pixels()[sourceRow * sourceWidth + sourceColumn];
+    }
+
+    /**
+     * Gets the grayscale luma of a specific pixel, in the range 0-255.
+     * @param row The row index (vertical position)
+     * @param col The column index (horizontal position)
+     * @return The weighted grayscale value at the specified position
+     */
+    public double getLuma(int row, int col) {
+        return lumaOf(getRGB(row, col));
+    }
+
+    /**
+     * Copies part of a row into a buffer: a fill for the white margins around the source
+     * pixels and one bulk copy for the pixels themselves.
+     * @param row The row index
+     * @param column The first column to copy
+     * @param length The number of pixels to copy
+     * @param destination The buffer to copy into, starting at index 0
+     */
+    void copyRow(int row, int column, int length, int[] destination) {
+        int sourceRow = row - top;
+        if (sourceRow < 0 || sourceRow >= sourceHeight) {
+            Arrays.fill(destination, 0, length, WHITE_COLOR_VALUES);
+            return;
+        }
+        // Clip the requested columns to the stored pixels
+        int copyStart = Math.max(column, left);
+        int copyEnd = Math.min(column + length, left + sourceWidth);
+        if (copyStart >= copyEnd) {
+            Arrays.fill(destination, 0, length, WHITE_COLOR_VALUES);
+            return;
+        }
+        Arrays.fill(destination, 0, copyStart - column, WHITE_COLOR_VALUES);
+        System.arraycopy(pixels(), sourceRow * sourceWidth + copyStart - left, destination,
+                copyStart - column, copyEnd - copyStart);
+        Arrays.fill(destination, copyEnd - column, length, WHITE_COLOR_VALUES);
+    }
+
+    /**
+     * Copies the scaled luma ({@link #scaledLumaOf}) of part of a row into a buffer.
+     * An image backed by a luma plane copies the values straight from it; any other image
+     * converts its pixels.
+     * @param row The row index
+     * @param column The first column to copy
+     * @param length The number of values to copy
+     * @param destination The buffer to copy into, starting at index 0
+     */
+    void copyScaledLumaRow(int row, int column, int length, int[] destination) {
+        if (lumaPlane == null) {
+            copyRow(row, column, length, destination);
+            for (int index = 0; index < length; index++) {
+                destination[index] = scaledLumaOf(destination[index]);
+            }
+            return;
+        }
+        int sourceRow = row - top;
+        int copyStart = Math.max(column, left);
+        int copyEnd = Math.min(column + length, left + sourceWidth);
+        if (sourceRow < 0 || sourceRow >= sourceHeight || copyStart >= copyEnd) {
+            Arrays.fill(destination, 0, length, WHITE_SCALED_LUMA);
+            return;
+        }
+        Arrays.fill(destination, 0, copyStart - column, WHITE_SCALED_LUMA);
+        lumaPlane.copy(sourceRow * sourceWidth + copyStart - left, destination,
+                copyStart - column, copyEnd - copyStart);
+        Arrays.fill(destination, copyEnd - column, length, WHITE_SCALED_LUMA);
+    }
+
+    /**
+     * Adds the luma ({@link #lumaOf}) of part of a row to a running sum, pixel by pixel from
+     * left to right. The stored pixels are read in place, so no buffer is needed; pixels in the
+     * white margins add the luma of white.
+     * @param row The row index
+     * @param column The first column to add
+     * @param length The number of pixels to add
+     * @param sum The sum to add to
+     * @return The sum with the pixels added
+     */
+    double addRowLuma(int row, int column, int length, double sum) {
+        int sourceRow = row - top;
+        int copyStart = Math.max(column, left);
+        int copyEnd = Math.min(column + length, left + sourceWidth);
+        if (sourceRow < 0 || sourceRow >= sourceHeight || copyStart >= copyEnd) {
+            copyStart = column + length;
+            copyEnd = copyStart;
+        }
+        for (int index = column; index < copyStart; index++) {
+            sum += WHITE_LUMA;
+        }
+        if (copyStart < copyEnd) {
+            int[] source = pixels();
+            int pixelIndex = sourceRow * sourceWidth + copyStart - left;
+            for (int pixelEnd = pixelIndex + copyEnd - copyStart; pixelIndex < pixelEnd; pixelIndex++) {
+                sum += lumaOf(source[pixelIndex]);
+            }
+        }
+        for (int index = copyEnd; index < column + length; index++) {
+            sum += WHITE_LUMA;
+        }
+        return sum;
+    }
+
+    /**
+     * Gets the packed ARGB source pixels, decoding them first for an image backed by a luma plane.
+     */
+    private int[] pixels() {
+        return pixels != null ? pixels : lumaPlane.getPixels();
+    }
+
     /**
      * Gets the Color of a specific pixel.
+     * Kept as a compatibility view; a new Color is created on every call, so
+     * performance-sensitive code should use {@link #getRGB} or {@link #getLuma}.
      * @param x The row index (vertical position)
      * @param y The column index (horizontal position)
      * @return The Color object at the specified position
@@ -75,7 +378,30 @@ public class Image {
      *       traditional image (x,y) convention
      */
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return new Color(getRGB(x, y));
+    }
+
+    /**
+     * Computes the grayscale luma of a packed ARGB value, in the range 0-255.
+     * @param rgb The packed ARGB value
+     * @return The weighted grayscale value
+     */
+    public static double lumaOf(int rgb) {
+        return ((rgb >> RED_SHIFT) & CHANNEL_MASK) * GREY_SCALE_RED_FACTOR +
+                ((rgb >> GREEN_SHIFT) & CHANNEL_MASK) * GREY_SCALE_GREEN_FACTOR +
+                (rgb & CHANNEL_MASK) * GREY_SCALE_BLUE_FACTOR;
+    }
+
+    /**
+     * Computes the grayscale luma of a packed ARGB value as an exact integer,
+     * scaled by {@link #LUMA_SCALE}, so sums of many pixels stay exact.
+     * @param rgb The packed ARGB value
+     * @return The weighted grayscale value multiplied by LUMA_SCALE
+     */
+    public static int scaledLumaOf(int rgb) {
+        return ((rgb >> RED_SHIFT) & CHANNEL_MASK) * SCALED_RED_FACTOR +
+                ((rgb >> GREEN_SHIFT) & CHANNEL_MASK) * SCALED_GREEN_FACTOR +
+                (rgb & CHANNEL_MASK) * SCALED_BLUE_FACTOR;
     }
 
     /**
@@ -84,18 +410,12 @@ public class Image {
      * @throws RuntimeException If there's an error writing the file
      */
     public void saveImage(String fileName) {
-        // Create BufferedImage with same dimensions as our pixel array
-        BufferedImage bufferedImage = new BufferedImage(
-                pixelArray[0].length,  // width (columns)
-                pixelArray.length,     // height (rows)
-                BufferedImage.TYPE_INT_RGB
-        );
-
-        // Transfer pixel data from Color[][] to BufferedImage
-        for (int row = 0; row < pixelArray.length; row++) {
-            for (int col = 0; col < pixelArray[row].length; col++) {
-                bufferedImage.setRGB(col, row, pixelArray[row][col].getRGB());
-            }
+        // Create BufferedImage with same dimensions and bulk-copy the pixels one row at a time
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] row = new int[width];
+        for (int rowIndex = 0; rowIndex < height; rowIndex++) {
+            copyRow(rowIndex, 0, width, row);
+            bufferedImage.setRGB(0, rowIndex, width, 1, row, 0, width);
         }
 
         // Write to JPEG file
@@ -1,6 +1,9 @@
 package image;
 
-import java.awt.*;
+import metrics.Metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Provides utility methods for image manipulation including padding, sub-image extraction,
@@ -11,163 +14,156 @@ public final class ImageEditor {
 
     // Constants for image processing
     private static final int MAX_RGB_VALUE = 255;                // Maximum RGB component value
-    private static final Color WHITE_COLOR_VALUES = new Color(255, 255, 255);  // White color constant
-    private static final int SIDES_NUMBER = 2;                   // Number of sides to pad (left/right or top/bottom)
-    private static final int PADDING_FACTOR = 2;                 // Base for dimension padding calculation
-    private static final double GREY_SCALE_RED_FACTOR = 0.2126;  // Red coefficient for grayscale conversion
-    private static final double GREY_SCALE_GREEN_FACTOR = 0.7152;// Green coefficient for grayscale conversion
-    private static final double GREY_SCALE_BLUE_FACTOR = 0.0722; // Blue coefficient for grayscale conversion
+    private static final int CHANNELS_NUMBER = 3;                // Red, green and blue
+    private static final int RED_SHIFT = 16;                     // Bit offset of the red channel
+    private static final int GREEN_SHIFT = 8;                    // Bit offset of the green channel
+    private static final int CHANNEL_MASK = 0xFF;                // Mask for a single color channel
 
     // Private constructor to prevent instantiation
     private ImageEditor() {}
 
     /**
      * Pads an image's dimensions to the nearest power of 2 with white pixels.
+     * The padding is virtual: the result shares the image's pixels and reads white outside
+     * them, so no pixel is copied.
      * @param image The image to pad
-     * @return A new Image instance with padded dimensions
+     * @return A padded view of the image, or the image itself if no padding is needed
      */
     public static Image padImageDimensions(Image image) {
-        // First pad the width dimension
+        long startTime = Metrics.now();
         int newWidth = updateDimension(image.getWidth());
-        Color[][] newPixelsMatrix = new Color[image.getHeight()][newWidth];
-        image = updateRows(newPixelsMatrix, image);
-
-        // Then pad the height dimension
         int newHeight = updateDimension(image.getHeight());
-        newPixelsMatrix = new Color[newHeight][newWidth];
-        image = updateColumns(newPixelsMatrix, image);
 
-        return image;
+        // Return original if no padding needed
+        Image paddedImage = image;
+        if (newWidth != image.getWidth() || newHeight != image.getHeight()) {
+            paddedImage = new Image(image, newWidth, newHeight);
+        }
+        Metrics.record(Metrics.Stage.PAD, startTime);
+        return paddedImage;
     }
 
     /**
-     * Divides an image into a grid of sub-images based on the given resolution.
+     * Gets the size a dimension is padded to by {@link #padImageDimensions}.
+     * @param dimension Original dimension (width or height)
+     * @return The smallest power of 2 that is >= the input dimension
+     */
+    public static int getPaddedDimension(int dimension) {
+        return updateDimension(dimension);
+    }
+
+    /**
+     * Divides an image into a grid of sub-image views based on the given resolution.
+     * The views share the source image's pixels, so no pixel data is copied.
      * @param image The source image to divide
      * @param resolution The number of sub-images along the width dimension
-     * @return A 2D array of sub-images
+     * @return A 2D array of sub-image views
      */
-    public static Image[][] getSubImages(Image image, int resolution) {
+    public static SubImage[][] getSubImages(Image image, int resolution) {
+        long startTime = Metrics.now();
         int subImagesSize = image.getWidth() / resolution;
         int rowsNumber = image.getHeight() / subImagesSize;
-        Image[][] subImages = new Image[rowsNumber][resolution];
+        SubImage[][] subImages = new SubImage[rowsNumber][resolution];
 
-        // Extract each sub-image from the source image
+        // Create a view over each sub-image region of the source image
         for (int rowIndex = 0; rowIndex < image.getHeight(); rowIndex += subImagesSize) {
             for (int columnIndex = 0; columnIndex < image.getWidth(); columnIndex += subImagesSize) {
-                subImages[rowIndex / subImagesSize][columnIndex / subImagesSize] = createSubImage(
-                        rowIndex, columnIndex, subImagesSize, image);
+                subImages[rowIndex / subImagesSize][columnIndex / subImagesSize] = new SubImage(
+                        image, rowIndex, columnIndex, subImagesSize);
             }
         }
+        Metrics.record(Metrics.Stage.SUB_IMAGES, startTime);
         return subImages;
     }
 
     /**
-     * Calculates the average brightness of an image (normalized to 0-1 range).
+     * Calculates the average color of every square tile when the image is split into the
+     * given number of tiles per row, matching {@link #getSubImages}.
+     * Pixels are read in row-major order, one band of tile rows per task.
      * @param image The image to analyze
-     * @return The average brightness value between 0 (dark) and 1 (bright)
+     * @param resolution The number of tiles along the width dimension
+     * @param pool The pool to compute on, or null to compute on the calling thread
+     * @return The packed 0xRRGGBB average color of each tile, indexed [tileRow][tileColumn]
      */
-    public static double calculateImageBrightness(Image image) {
-        double greyPixelSum = 0;
-
-        // Sum weighted brightness values for all pixels
-        for (int rowIndex = 0; rowIndex < image.getHeight(); rowIndex++) {
-            for (int columnIndex = 0; columnIndex < image.getWidth(); columnIndex++) {
-                Color currentPixel = image.getPixel(rowIndex, columnIndex);
-                greyPixelSum += currentPixel.getRed() * GREY_SCALE_RED_FACTOR +
-                        currentPixel.getGreen() * GREY_SCALE_GREEN_FACTOR +
-                        currentPixel.getBlue() * GREY_SCALE_BLUE_FACTOR;
+    public static int[][] calculateAverageColors(Image image, int resolution, ForkJoinPool pool) {
+        int tileSize = image.getWidth() / resolution;
+        int rowsNumber = image.getHeight() / tileSize;
+        int[][] colors = new int[rowsNumber][resolution];
+        RowBands.forEachBand(pool, rowsNumber, (fromRow, toRow) -> {
+            int[] pixels = new int[image.getWidth()];
+            long[] channelSums = new long[resolution * CHANNELS_NUMBER];
+            long tilePixels = (long) tileSize * tileSize;
+            for (int tileRow = fromRow; tileRow < toRow; tileRow++) {
+                Arrays.fill(channelSums, 0);
+                for (int rowIndex = tileRow * tileSize; rowIndex < (tileRow + 1) * tileSize; rowIndex++) {
+                    image.copyRow(rowIndex, 0, pixels.length, pixels);
+                    int pixelIndex = 0;
+                    for (int tileColumn = 0; tileColumn < resolution; tileColumn++) {
+                        long red = 0, green = 0, blue = 0;
+                        for (int tileEnd = pixelIndex + tileSize; pixelIndex < tileEnd; pixelIndex++) {
+                            int rgb = pixels[pixelIndex];
+                            red += (rgb >> RED_SHIFT) & CHANNEL_MASK;
+                            green += (rgb >> GREEN_SHIFT) & CHANNEL_MASK;
+                            blue += rgb & CHANNEL_MASK;
+                        }
+                        int sumIndex = tileColumn * CHANNELS_NUMBER;
+                        channelSums[sumIndex] += red;
+                        channelSums[sumIndex + 1] += green;
+                        channelSums[sumIndex + 2] += blue;
+                    }
+                }
+                for (int tileColumn = 0; tileColumn < resolution; tileColumn++) {
+                    int sumIndex = tileColumn * CHANNELS_NUMBER;
+                    colors[tileRow][tileColumn] =
+                            (int) ((channelSums[sumIndex] + tilePixels / 2) / tilePixels) << RED_SHIFT |
+                            (int) ((channelSums[sumIndex + 1] + tilePixels / 2) / tilePixels) << GREEN_SHIFT |
+                            (int) ((channelSums[sumIndex + 2] + tilePixels / 2) / tilePixels);
+                }
             }
-        }
-
-        // Normalize by total pixels and maximum possible value
-        return greyPixelSum / (image.getWidth() * image.getHeight() * MAX_RGB_VALUE);
+        });
+        return colors;
     }
 
     /**
-     * Creates a sub-image from a portion of the source image.
-     * @param row Starting row index in source image
-     * @param column Starting column index in source image
-     * @param size Size of the square sub-image to extract
-     * @param image Source image
-     * @return New Image instance containing the sub-image
+     * Calculates the average brightness of an image (normalized to 0-1 range).
+     * @param image The image to analyze
+     * @return The average brightness value between 0 (dark) and 1 (bright)
      */
-    private static Image createSubImage(int row, int column, int size, Image image) {
-        Color[][] pixelsSubMatrix = new Color[size][size];
-
-        // Copy pixels from source image to sub-image
-        for (int rowIndex = row; rowIndex < row + size; rowIndex++) {
-            for (int columnIndex = column; columnIndex < column + size; columnIndex++) {
-                pixelsSubMatrix[rowIndex - row][columnIndex - column] =
-                        image.getPixel(rowIndex, columnIndex);
-            }
-        }
-        return new Image(pixelsSubMatrix, size, size);
+    public static double calculateImageBrightness(Image image) {
+        return calculateRegionBrightness(image, 0, 0, image.getWidth(), image.getHeight());
     }
 
     /**
-     * Updates image rows by adding white padding to reach target width.
-     * @param pixelsMatrix The destination pixel matrix
-     * @param originalImage The source image
-     * @return New Image instance with padded width
+     * Calculates the average brightness of a sub-image view (normalized to 0-1 range).
+     * Reads the parent's pixels in place, one row of the view at a time, allocating nothing.
+     * @param subImage The sub-image view to analyze
+     * @return The average brightness value between 0 (dark) and 1 (bright)
      */
-    private static Image updateRows(Color[][] pixelsMatrix, Image originalImage) {
-        int newPixelsNumberForEachSide = (pixelsMatrix[0].length - originalImage.getWidth()) / SIDES_NUMBER;
-
-        // Return original if no padding needed
-        if (pixelsMatrix[0].length == originalImage.getWidth()) {
-            return originalImage;
-        }
-
-        // Copy original pixels with white padding on both sides
-        for (int rowIndex = 0; rowIndex < originalImage.getHeight(); rowIndex++) {
-            for (int colIndex = 0; colIndex < pixelsMatrix[rowIndex].length; colIndex++) {
-                if (colIndex < newPixelsNumberForEachSide) {
-                    // Left padding
-                    pixelsMatrix[rowIndex][colIndex] = WHITE_COLOR_VALUES;
-                } else if (colIndex < newPixelsNumberForEachSide + originalImage.getWidth()) {
-                    // Original image pixels
-                    pixelsMatrix[rowIndex][colIndex] = originalImage.getPixel(rowIndex,
-                            colIndex - newPixelsNumberForEachSide);
-                } else {
-                    // Right padding
-                    pixelsMatrix[rowIndex][colIndex] = WHITE_COLOR_VALUES;
-                }
-            }
-        }
-        return new Image(pixelsMatrix, pixelsMatrix[0].length, originalImage.getHeight());
+    public static double calculateImageBrightness(SubImage subImage) {
+        return calculateRegionBrightness(subImage.getParent(), subImage.getFirstRow(),
+                subImage.getFirstColumn(), subImage.getWidth(), subImage.getHeight());
     }
 
     /**
-     * Updates image columns by adding white padding to reach target height.
-     * @param pixelsMatrix The destination pixel matrix
-     * @param originalImage The source image
-     * @return New Image instance with padded height
+     * Calculates the average brightness of a rectangular region of an image.
+     * @param image The image holding the region
+     * @param firstRow Row of the region's top-left pixel
+     * @param firstColumn Column of the region's top-left pixel
+     * @param width Width of the region
+     * @param height Height of the region
+     * @return The average brightness value between 0 (dark) and 1 (bright)
      */
-    private static Image updateColumns(Color[][] pixelsMatrix, Image originalImage) {
-        int newPixelsNumberForEachSide = (pixelsMatrix.length - originalImage.getHeight()) / SIDES_NUMBER;
+    private static double calculateRegionBrightness(Image image, int firstRow, int firstColumn,
+                                                    int width, int height) {
+        double greyPixelSum = 0;
 
-        // Return original if no padding needed
-        if (pixelsMatrix.length == originalImage.getHeight()) {
-            return originalImage;
+        // Sum weighted brightness values for all pixels
+        for (int rowIndex = 0; rowIndex < height; rowIndex++) {
+            greyPixelSum = image.addRowLuma(firstRow + rowIndex, firstColumn, width, greyPixelSum);
         }
 
-        // Copy original pixels with white padding on top and bottom
-        for (int columnIndex = 0; columnIndex < pixelsMatrix[0].length; columnIndex++) {
-            for (int rowIndex = 0; rowIndex < pixelsMatrix.length; rowIndex++) {
-                if (rowIndex < newPixelsNumberForEachSide) {
-                    // Top padding
-                    pixelsMatrix[rowIndex][columnIndex] = WHITE_COLOR_VALUES;
-                } else if (rowIndex < newPixelsNumberForEachSide + originalImage.getHeight()) {
-                    // Original image pixels
-                    pixelsMatrix[rowIndex][columnIndex] = originalImage.getPixel(
-                            rowIndex - newPixelsNumberForEachSide, columnIndex);
-                } else {
-                    // Bottom padding
-                    pixelsMatrix[rowIndex][columnIndex] = WHITE_COLOR_VALUES;
-                }
-            }
-        }
-        return new Image(pixelsMatrix, pixelsMatrix[0].length, pixelsMatrix.length);
+        // Normalize by total pixels and maximum possible value
+        return greyPixelSum / (width * height * MAX_RGB_VALUE);
     }
 
     /**
@@ -176,13 +172,9 @@ public final class ImageEditor {
      * @return The smallest power of 2 that is >= the input dimension
      */
     private static int updateDimension(int dimension) {
-        int counter = 0;
-        while (Math.pow(PADDING_FACTOR, counter) < dimension) {
-            counter++;
-        }
-        if (Math.pow(PADDING_FACTOR, counter) > dimension) {
-            dimension = (int) Math.pow(PADDING_FACTOR, counter);
+        if (dimension <= 1) {
+            return 1;
         }
-        return dimension;
+        return Integer.highestOneBit(dimension - 1) << 1;
     }
 }
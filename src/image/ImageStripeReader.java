@@ -0,0 +1,90 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Reads an image file in horizontal stripes, so images larger than the heap can be processed.
+ * Only the requested rows are kept in memory, optionally subsampled in both directions.
+ * @author Salah Mahmied
+ */
+public class ImageStripeReader implements Closeable {
+
+    private static final int FIRST_IMAGE_INDEX = 0;
+
+    private final ImageInputStream inputStream;
+    private final ImageReader reader;
+    private final int width;    // Width of the source image in pixels
+    private final int height;   // Height of the source image in pixels
+
+    /**
+     * Opens an image file for stripe reading. Only the header is decoded.
+     * @param filename Path to the image file to read
+     * @throws IOException If the file cannot be opened or no reader supports its format
+     */
+    public ImageStripeReader(String filename) throws IOException {
+        this.inputStream = ImageIO.createImageInputStream(new File(filename));
+        if (inputStream == null) {
+            throw new IOException("Cannot open image: " + filename);
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(inputStream);
+        if (!readers.hasNext()) {
+            inputStream.close();
+            throw new IOException("Unsupported image format: " + filename);
+        }
+        this.reader = readers.next();
+        reader.setInput(inputStream, true, true);
+        this.width = reader.getWidth(FIRST_IMAGE_INDEX);
+        this.height = reader.getHeight(FIRST_IMAGE_INDEX);
+    }
+
+    /**
+     * Gets the width of the source image in pixels.
+     * @return The image width
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the source image in pixels.
+     * @return The image height
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Reads a full-width stripe of rows as an image, keeping every sampleStep-th pixel in
+     * each direction, starting from the stripe's first row and column.
+     * @param firstRow The first source row of the stripe
+     * @param rowsNumber The number of source rows in the stripe
+     * @param sampleStep The subsampling step; 1 reads every pixel
+     * @return The stripe, of size ceil(width / sampleStep) x ceil(rowsNumber / sampleStep)
+     * @throws IOException If the stripe cannot be decoded
+     */
+    public Image readStripe(int firstRow, int rowsNumber, int sampleStep) throws IOException {
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(0, firstRow, width, rowsNumber));
+        param.setSourceSubsampling(sampleStep, sampleStep, 0, 0);
+        BufferedImage stripe = reader.read(FIRST_IMAGE_INDEX, param);
+        int stripeWidth = stripe.getWidth();
+        int stripeHeight = stripe.getHeight();
+        return new Image(stripe.getRGB(0, 0, stripeWidth, stripeHeight, null, 0, stripeWidth),
+                stripeWidth, stripeHeight);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.dispose();
+        inputStream.close();
+    }
+}
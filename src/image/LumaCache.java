@@ -0,0 +1,382 @@
+package image;
+
+import metrics.Metrics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * An on-disk cache of decoded images' luma planes, shared by every process on the host.
+ * An entry holds the exact scaled luma ({@link Image#scaledLumaOf}) of every pixel of one
+ * image, keyed by the SHA-256 of the image file's content, so an edited file never hits.
+ * Hashing a large file costs a full read, so each image path also has a small key file
+ * recording the size, modification time and content hash seen last; a load whose file still
+ * has that size and modification time goes straight to the entry, and only a changed or new
+ * file is hashed again. Entries are memory-mapped read-only rather than read, so loading one
+ * costs no decode and no copy, and processes converting the same image share the operating
+ * system's page cache instead of each holding a heap copy. The planes are stored unpadded:
+ * padding is virtual and reads white around them.
+ * The cache is off unless the ascii_art.luma_cache system property names its directory, so
+ * a plain run leaves nothing behind. Its total size is capped by the
+ * ascii_art.luma_cache_limit property, in megabytes (default 1024); after every write the
+ * least recently used files, by modification time, which a hit refreshes, are deleted until
+ * the cache fits. A limit of 0 turns the cache off as well. Entry format, little-endian:
+ * magic, width, height, then width x height scaled luma ints in row-major order.
+ * @author Salah Mahmied
+ */
+public final class LumaCache {
+
+    private static final String LUMA_CACHE_PROPERTY = "ascii_art.luma_cache";
+    private static final String LUMA_CACHE_LIMIT_PROPERTY = "ascii_art.luma_cache_limit";
+    private static final long DEFAULT_LUMA_CACHE_LIMIT = 1024;     // Megabytes
+    private static final int MEGABYTE_SHIFT = 20;
+    private static final String ENTRY_SUFFIX = ".luma";
+    private static final String KEY_SUFFIX = ".key";
+    private static final int LUMA_CACHE_MAGIC = 0x4C_55_4D_31;     // "LUM1"
+    private static final int KEY_MAGIC = 0x4C_4B_45_31;            // "LKE1"
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;      // Magic, width and height
+    private static final int BUFFER_SIZE = 1 << 16;                 // Bytes read or written per call
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int NIBBLE_BITS = 4;
+    private static final int NIBBLE_MASK = 0xF;
+
+    // Private constructor to prevent instantiation
+    private LumaCache() {}
+
+    /**
+     * Loads an image through the cache, when the cache is configured. On a hit the image is
+     * backed by the mapped entry and nothing is decoded until colors are needed; on a miss the
+     * image is decoded as by {@link Image#Image(String)} and an entry is written for later
+     * loads, evicting the least recently used entries beyond the size limit. Cache failures
+     * are logged and fall back to decoding; without a cache directory or with a limit of 0
+     * the image is always decoded.
+     * @param filename Path to the image file to load
+     * @return The image
+     * @throws IOException If the file cannot be read or is not a valid image
+     */
+    public static Image load(String filename) throws IOException {
+        long startTime = Metrics.now();
+        long startAllocated = Metrics.allocatedBytes();
+        Path directory = getCacheDirectory();
+        long limitBytes = getLimitBytes();
+        if (directory == null || limitBytes <= 0) {
+            return new Image(filename);
+        }
+        Path imagePath;
+        BasicFileAttributes attributes;
+        try {
+            imagePath = Paths.get(filename);
+            attributes = Files.readAttributes(imagePath, BasicFileAttributes.class);
+        } catch (IOException | InvalidPathException e) {
+            return new Image(filename);     // Reports the unreadable file as a plain load does
+        }
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Path keyPath = getKeyPath(directory, imagePath);
+        String contentHash = readKey(keyPath, size, modified);
+        if (contentHash == null) {
+            try {
+                contentHash = hashFile(imagePath);
+                writeKey(keyPath, imagePath, size, modified, contentHash);
+            } catch (IOException e) {
+                Logger.getGlobal().warning(String.format("Failed to key luma cache for \"%s\"", filename));
+                return new Image(filename);
+            }
+        }
+
+        Path entryPath = directory.resolve(contentHash + ENTRY_SUFFIX);
+        if (Files.isRegularFile(entryPath)) {
+            try {
+                Image image = map(entryPath, filename, size, modified);
+                touch(entryPath);
+                touch(keyPath);
+                Metrics.record(Metrics.Stage.DECODE, startTime, startAllocated);
+                return image;
+            } catch (IOException e) {
+                Logger.getGlobal().warning(String.format("Failed to read luma cache \"%s\"", entryPath));
+            }
+        }
+
+        Image image = new Image(filename);
+        try {
+            if (write(entryPath, image, limitBytes)) {
+                evict(directory, limitBytes);
+            }
+        } catch (IOException e) {
+            Logger.getGlobal().warning(String.format("Failed to write luma cache \"%s\"", entryPath));
+        }
+        return image;
+    }
+
+    /**
+     * Reads the content hash recorded for an image path, if the file still has the recorded
+     * size and modification time.
+     * @return The content hash, or null if there is no key or the file changed
+     */
+    private static String readKey(Path keyPath, long size, long modified) {
+        if (!Files.isRegularFile(keyPath)) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(keyPath)))) {
+            if (input.readInt() != KEY_MAGIC || input.readLong() != size || input.readLong() != modified) {
+                return null;
+            }
+            return input.readUTF();
+        } catch (IOException e) {
+            return null;    // A corrupt or concurrently replaced key only costs a hash
+        }
+    }
+
+    /**
+     * Records the content hash of an image path with the size and modification time it was
+     * hashed at. Nothing is recorded if the file changed while it was hashed.
+     */
+    private static void writeKey(Path keyPath, Path imagePath, long size, long modified,
+                                 String contentHash) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(imagePath, BasicFileAttributes.class);
+        if (attributes.size() != size || attributes.lastModifiedTime().toMillis() != modified) {
+            return;
+        }
+        Files.createDirectories(keyPath.getParent());
+        Path tempPath = Files.createTempFile(keyPath.getParent(), keyPath.getFileName().toString(), null);
+        try {
+            try (DataOutputStream output = new DataOutputStream(Files.newOutputStream(tempPath))) {
+                output.writeInt(KEY_MAGIC);
+                output.writeLong(size);
+                output.writeLong(modified);
+                output.writeUTF(contentHash);
+            }
+            Files.move(tempPath, keyPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Marks an entry as just used, so eviction keeps it longest.
+     */
+    private static void touch(Path entryPath) {
+        try {
+            Files.setLastModifiedTime(entryPath, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // A read-only cache still serves hits; only its eviction order suffers
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries and keys until they fit in the limit.
+     * Entries another process removes meanwhile are skipped; an entry that cannot be deleted,
+     * for example because another process has it mapped on Windows, is left for a later trim.
+     */
+    private static void evict(Path directory, long limitBytes) throws IOException {
+        Map<Path, BasicFileAttributes> entries = new HashMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                if (!name.endsWith(ENTRY_SUFFIX) && !name.endsWith(KEY_SUFFIX)) {
+                    continue;
+                }
+                try {
+                    entries.put(path, Files.readAttributes(path, BasicFileAttributes.class));
+                } catch (IOException e) {
+                    // Removed by another process since it was listed
+                }
+            }
+        }
+        List<Path> newestFirst = new ArrayList<>(entries.keySet());
+        newestFirst.sort(Comparator.comparing((Path path) -> entries.get(path).lastModifiedTime()).reversed());
+        long totalBytes = 0;
+        for (Path path : newestFirst) {
+            totalBytes += entries.get(path).size();
+            if (totalBytes > limitBytes) {
+                try {
+                    Files.deleteIfExists(path);
+                } catch (IOException e) {
+                    Logger.getGlobal().warning(String.format("Failed to evict luma cache \"%s\"", path));
+                }
+            }
+        }
+    }
+
+    /**
+     * Maps an entry and wraps it as an image of the file with the given size and modification time.
+     */
+    private static Image map(Path entryPath, String filename, long size, long modified) throws IOException {
+        try (FileChannel channel = FileChannel.open(entryPath, StandardOpenOption.READ)) {
+            long entryBytes = channel.size();
+            if (entryBytes < HEADER_BYTES || entryBytes > Integer.MAX_VALUE) {
+                throw new IOException("Bad luma cache size");
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, entryBytes);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            int width = mapped.getInt(Integer.BYTES);
+            int height = mapped.getInt(2 * Integer.BYTES);
+            if (mapped.getInt(0) != LUMA_CACHE_MAGIC || width <= 0 || height <= 0 ||
+                    entryBytes != HEADER_BYTES + (long) width * height * Integer.BYTES) {
+                throw new IOException("Bad luma cache header");
+            }
+            mapped.position(HEADER_BYTES);
+            ByteBuffer plane = mapped.slice().order(ByteOrder.LITTLE_ENDIAN);
+            return new Image(new LumaPlane(plane.asIntBuffer(), filename, size, modified, width, height),
+                    width, height);
+        }
+    }
+
+    /**
+     * Writes an image's luma plane as a new entry. The entry is written to a temporary file
+     * and moved into place atomically, so other processes never map a partial entry.
+     * @return Whether the entry was written; entries larger than the limit or than one mapping are not
+     */
+    private static boolean write(Path entryPath, Image image, long limitBytes) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long entryBytes = HEADER_BYTES + (long) width * height * Integer.BYTES;
+        if (entryBytes > limitBytes || entryBytes > Integer.MAX_VALUE) {
+            return false;   // Would evict the whole cache, or is too large to map as one buffer
+        }
+        Files.createDirectories(entryPath.getParent());
+        Path tempPath = Files.createTempFile(entryPath.getParent(), entryPath.getFileName().toString(), null);
+        try {
+            try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.allocate(Math.max(BUFFER_SIZE, width * Integer.BYTES))
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(LUMA_CACHE_MAGIC).putInt(width).putInt(height);
+                int[] lumas = new int[width];
+                for (int rowIndex = 0; rowIndex < height; rowIndex++) {
+                    if (buffer.remaining() < width * Integer.BYTES) {
+                        writeBuffer(channel, buffer);
+                    }
+                    image.copyScaledLumaRow(rowIndex, 0, width, lumas);
+                    buffer.asIntBuffer().put(lumas);
+                    buffer.position(buffer.position() + width * Integer.BYTES);
+                }
+                writeBuffer(channel, buffer);
+            }
+            Files.move(tempPath, entryPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the buffered bytes to the channel and empties the buffer.
+     */
+    private static void writeBuffer(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Gets the content hash of an image file: the hex SHA-256 of its content.
+     */
+    private static String hashFile(Path imagePath) throws IOException {
+        MessageDigest digest = createDigest();
+        try (InputStream input = Files.newInputStream(imagePath)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Gets the key path of an image file: the hex SHA-256 of its absolute path in the cache directory.
+     */
+    private static Path getKeyPath(Path directory, Path imagePath) {
+        String absolutePath = imagePath.toAbsolutePath().normalize().toString();
+        return directory.resolve(toHex(createDigest().digest(absolutePath.getBytes(StandardCharsets.UTF_8))) +
+                KEY_SUFFIX);
+    }
+
+    /**
+     * Gets the content hash that names entries: the hex SHA-256 of an encoded image's bytes.
+     * @param content The whole content of an image file
+     * @return The hash, as in the name of the file's entry without its suffix
+     */
+    public static String contentHash(byte[] content) {
+        return toHex(createDigest().digest(content));
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);     // Every Java platform provides SHA-256
+        }
+    }
+
+    private static String toHex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte hashByte : hash) {
+            hex.append(HEX_DIGITS[(hashByte >> NIBBLE_BITS) & NIBBLE_MASK])
+                    .append(HEX_DIGITS[hashByte & NIBBLE_MASK]);
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Gets the cache directory, or null if the cache is not configured.
+     */
+    private static Path getCacheDirectory() {
+        String configured = System.getProperty(LUMA_CACHE_PROPERTY);
+        if (configured == null || configured.isEmpty()) {
+            return null;
+        }
+        try {
+            return Paths.get(configured);
+        } catch (InvalidPathException e) {
+            Logger.getGlobal().warning(String.format("Invalid luma cache directory \"%s\"", configured));
+            return null;
+        }
+    }
+
+    /**
+     * Gets the size limit of the cache in bytes; 0 or less means the cache is off.
+     * An unparsable limit is logged and replaced by the default.
+     */
+    private static long getLimitBytes() {
+        String configured = System.getProperty(LUMA_CACHE_LIMIT_PROPERTY);
+        if (configured == null) {
+            return DEFAULT_LUMA_CACHE_LIMIT << MEGABYTE_SHIFT;
+        }
+        try {
+            long megabytes = Long.parseLong(configured.trim());
+            return Math.min(megabytes, Long.MAX_VALUE >> MEGABYTE_SHIFT) << MEGABYTE_SHIFT;
+        } catch (NumberFormatException e) {
+            Logger.getGlobal().warning(String.format("Invalid luma cache limit \"%s\"", configured));
+            return DEFAULT_LUMA_CACHE_LIMIT << MEGABYTE_SHIFT;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.logging.Logger;
+
+/**
+ * The scaled luma of every pixel of an image, read from a memory-mapped cache file, together
+ * with the path, size and modification time of the image file it was loaded for. Brightness
+ * is read straight from the mapping; the packed ARGB pixels are only decoded, once, if
+ * something asks for colors. Should the file have changed or gone by then, so its colors no
+ * longer match the luma, the failure is logged and the pixels become the gray levels of the
+ * luma, so a render in progress still completes.
+ * @author Salah Mahmied
+ */
+class LumaPlane {
+
+    private static final String SOURCE_CHANGED_MESSAGE =
+            "Cannot decode the colors of \"%s\": the file was moved or changed since it was loaded; using gray";
+    private static final int OPAQUE = 0xFF000000;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+
+    private final IntBuffer scaledLuma;     // Row-major scaled luma, a view of the mapped file
+    private final String filename;          // The image the plane was loaded for
+    private final long size;                // Size of that file when it was loaded
+    private final long modified;            // Its modification time when it was loaded, in milliseconds
+    private final int width;
+    private final int height;
+    private volatile int[] pixels;          // The decoded ARGB pixels, null until first needed
+
+    /**
+     * Wraps a mapped luma plane.
+     * @param scaledLuma The scaled luma values in row-major order
+     * @param filename Path of the image the plane was loaded for
+     * @param size Size of the image file when it was loaded
+     * @param modified Modification time of the image file when it was loaded, in milliseconds
+     * @param width Width of the image in pixels
+     * @param height Height of the image in pixels
+     */
+    LumaPlane(IntBuffer scaledLuma, String filename, long size, long modified, int width, int height) {
+        this.scaledLuma = scaledLuma;
+        this.filename = filename;
+        this.size = size;
+        this.modified = modified;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Copies scaled luma values out of the mapping.
+     * @param index Index of the first value, row * width + column
+     * @param destination The buffer to copy into
+     * @param offset The first index of the buffer to fill
+     * @param length The number of values to copy
+     */
+    void copy(int index, int[] destination, int offset, int length) {
+        scaledLuma.get(index, destination, offset, length);
+    }
+
+    /**
+     * Gets the packed ARGB pixels, decoding the source image the first time.
+     * @return The pixels in row-major order
+     */
+    int[] getPixels() {
+        int[] decoded = pixels;
+        if (decoded == null) {
+            synchronized (this) {
+                decoded = pixels;
+                if (decoded == null) {
+                    decoded = decode();
+                    pixels = decoded;
+                }
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Decodes the source file if it still has the size and modification time it was loaded
+     * with, and otherwise derives gray pixels from the luma.
+     */
+    private int[] decode() {
+        try {
+            Path path = Paths.get(filename);
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            if (attributes.size() == size && attributes.lastModifiedTime().toMillis() == modified) {
+                BufferedImage im = ImageIO.read(path.toFile());
+                if (im != null && im.getWidth() == width && im.getHeight() == height) {
+                    return im.getRGB(0, 0, width, height, null, 0, width);
+                }
+            }
+        } catch (IOException e) {
+            // Reported below, like a changed file
+        }
+        Logger.getGlobal().warning(String.format(SOURCE_CHANGED_MESSAGE, filename));
+        return grayPixels();
+    }
+
+    /**
+     * Gets pixels whose gray level is each pixel's luma, which is as close to the cached image
+     * as the plane allows.
+     */
+    private int[] grayPixels() {
+        int[] gray = new int[width * height];
+        scaledLuma.get(0, gray, 0, gray.length);
+        for (int index = 0; index < gray.length; index++) {
+            int level = (gray[index] + Image.LUMA_SCALE / 2) / Image.LUMA_SCALE;
+            gray[index] = OPAQUE | level << RED_SHIFT | level << GREEN_SHIFT | level;
+        }
+        return gray;
+    }
+}
@@ -0,0 +1,77 @@
+package image;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits a range of rows into contiguous bands and processes them on a ForkJoinPool.
+ * Every row is processed exactly once, by exactly one band, so the result of a band-parallel
+ * computation is identical to processing the rows sequentially.
+ * @author Salah Mahmied
+ */
+public final class RowBands {
+
+    private static final int BANDS_PER_THREAD = 4;  // Extra bands per thread for load balancing
+
+    /**
+     * Processes a contiguous band of rows.
+     */
+    @FunctionalInterface
+    public interface BandAction {
+        /**
+         * Processes the rows in [fromRow, toRow).
+         * @param fromRow The first row of the band, inclusive
+         * @param toRow The last row of the band, exclusive
+         */
+        void process(int fromRow, int toRow);
+    }
+
+    // Private constructor to prevent instantiation
+    private RowBands() {}
+
+    /**
+     * Processes rows [0, rowsNumber) in bands on the given pool, or on the calling thread
+     * when no pool is given. Returns once every band is done.
+     * @param pool The pool to run the bands on, or null to run sequentially
+     * @param rowsNumber The number of rows to process
+     * @param action The action applied to each band
+     */
+    public static void forEachBand(ForkJoinPool pool, int rowsNumber, BandAction action) {
+        if (pool == null || pool.getParallelism() <= 1 || rowsNumber <= 1) {
+            action.process(0, rowsNumber);
+            return;
+        }
+        int bandSize = Math.max(1, rowsNumber / (pool.getParallelism() * BANDS_PER_THREAD));
+        pool.invoke(new BandTask(0, rowsNumber, bandSize, action));
+    }
+
+    /**
+     * Recursively halves a row range until it is no larger than one band.
+     */
+    private static final class BandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int fromRow;
+        private final int toRow;
+        private final int bandSize;
+        private final BandAction action;
+
+        private BandTask(int fromRow, int toRow, int bandSize, BandAction action) {
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.bandSize = bandSize;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= bandSize) {
+                action.process(fromRow, toRow);
+                return;
+            }
+            int middleRow = (fromRow + toRow) >>> 1;
+            invokeAll(new BandTask(fromRow, middleRow, bandSize, action),
+                    new BandTask(middleRow, toRow, bandSize, action));
+        }
+    }
+}
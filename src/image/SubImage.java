@@ -0,0 +1,89 @@
+package image;
+
+/**
+ * A lightweight square view over a region of a parent image.
+ * Pixels are read directly from the parent using a row/column offset,
+ * so creating a sub-image never copies pixel data.
+ * @author Salah Mahmied
+ */
+public class SubImage {
+
+    private final Image parent;     // The image this view points into
+    private final int firstRow;     // Row offset of the view inside the parent
+    private final int firstColumn;  // Column offset of the view inside the parent
+    private final int size;         // Side length of the square view in pixels
+
+    /**
+     * Constructs a view over a square region of the given image.
+     * @param parent The image to view
+     * @param firstRow Row offset of the top-left pixel in the parent
+     * @param firstColumn Column offset of the top-left pixel in the parent
+     * @param size Side length of the square region
+     */
+    public SubImage(Image parent, int firstRow, int firstColumn, int size) {
+        this.parent = parent;
+        this.firstRow = firstRow;
+        this.firstColumn = firstColumn;
+        this.size = size;
+    }
+
+    /**
+     * Gets the width of the view in pixels.
+     * @return The view width
+     */
+    public int getWidth() {
+        return size;
+    }
+
+    /**
+     * Gets the height of the view in pixels.
+     * @return The view height
+     */
+    public int getHeight() {
+        return size;
+    }
+
+    /**
+     * Gets the packed ARGB value of a pixel, relative to the view's top-left corner.
+     * @param row The row index inside the view
+     * @param col The column index inside the view
+     * @return The packed ARGB value at the specified position
+     */
+    public int getRGB(int row, int col) {
+        return parent.getRGB(firstRow + row, firstColumn + col);
+    }
+
+    /**
+     * Gets the grayscale luma of a pixel, relative to the view's top-left corner.
+     * @param row The row index inside the view
+     * @param col The column index inside the view
+     * @return The weighted grayscale value at the specified position
+     */
+    public double getLuma(int row, int col) {
+        return parent.getLuma(firstRow + row, firstColumn + col);
+    }
+
+    /**
+     * Gets the image this view points into.
+     * @return The parent image
+     */
+    public Image getParent() {
+        return parent;
+    }
+
+    /**
+     * Gets the row offset of the view inside the parent image.
+     * @return The first row of the view
+     */
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    /**
+     * Gets the column offset of the view inside the parent image.
+     * @return The first column of the view
+     */
+    public int getFirstColumn() {
+        return firstColumn;
+    }
+}
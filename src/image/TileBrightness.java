@@ -0,0 +1,154 @@
+package image;
+
+import metrics.Metrics;
+
+import java.util.Arrays;
+
+/**
+ * Computes the brightness of every square tile of a sequence of same-sized images, such as
+ * the frames of an animation. The row buffer, tile sums and brightness grid are allocated once
+ * and reused for every image, so computing a frame allocates nothing. Tile sums are exact
+ * scaled luma sums, so the values equal those of {@link BrightnessTable#getTileBrightness}.
+ * In incremental mode the previous image's pixels are kept, and each tile is compared with
+ * them row segment by row segment (Arrays.mismatch, which the JIT vectorizes); only tiles that
+ * changed have their brightness recomputed, so mostly static sequences cost little more than
+ * one pass of comparisons. The comparison is exact, so no change is ever missed.
+ * An instance is not thread-safe: it belongs to the thread computing the frames.
+ * @author Salah Mahmied
+ */
+public class TileBrightness {
+
+    private final int width;                // Width of every image in pixels
+    private final int resolution;           // The number of tiles along the width dimension
+    private final int tileSize;             // Side length of each tile in pixels
+    private final int[] pixels;             // One row of the current image
+    private final long[] tileSums;          // Summed scaled luma of one row of tiles
+    private final double[][] brightness;    // The grid returned for every image
+    private final int[] previousPixels;     // The last image's pixels in incremental mode, else null
+    private final boolean[][] changedTiles; // Tiles recomputed by the last calculation
+    private boolean hasPrevious;            // Whether previousPixels holds an image yet
+
+    /**
+     * Allocates the buffers for images of the given size, recomputing every tile of every image.
+     * @param width Width of every image, as padded by {@link ImageEditor#padImageDimensions}
+     * @param height Height of every image, as padded by {@link ImageEditor#padImageDimensions}
+     * @param resolution The number of tiles along the width dimension
+     */
+    public TileBrightness(int width, int height, int resolution) {
+        this(width, height, resolution, false);
+    }
+
+    /**
+     * Allocates the buffers for images of the given size.
+     * @param width Width of every image, as padded by {@link ImageEditor#padImageDimensions}
+     * @param height Height of every image, as padded by {@link ImageEditor#padImageDimensions}
+     * @param resolution The number of tiles along the width dimension
+     * @param incremental Whether to keep each image's pixels and recompute only changed tiles
+     */
+    public TileBrightness(int width, int height, int resolution, boolean incremental) {
+        this.width = width;
+        this.resolution = resolution;
+        this.tileSize = width / resolution;
+        this.pixels = new int[width];
+        this.tileSums = new long[resolution];
+        this.brightness = new double[height / tileSize][resolution];
+        this.previousPixels = incremental ? new int[width * brightness.length * tileSize] : null;
+        this.changedTiles = new boolean[brightness.length][resolution];
+    }
+
+    /**
+     * Gets the tiles whose brightness the last calculation recomputed: every tile, unless in
+     * incremental mode after the first image. The grid is overwritten by the next calculation.
+     * @return Whether each tile was recomputed, indexed [tileRow][tileColumn]
+     */
+    public boolean[][] getChangedTiles() {
+        return changedTiles;
+    }
+
+    /**
+     * Calculates the brightness of every tile of an image in one row-major pass over its pixels.
+     * In incremental mode only the tiles that changed since the previous image are recomputed.
+     * The returned grid is overwritten by the next call.
+     * @param image The image to analyze, of the size given at construction
+     * @return The tile brightness values, indexed [tileRow][tileColumn]
+     */
+    public double[][] calculate(Image image) {
+        long startTime = Metrics.now();
+        if (previousPixels != null && hasPrevious) {
+            calculateChanged(image);
+            Metrics.record(Metrics.Stage.BRIGHTNESS, startTime);
+            return brightness;
+        }
+        long tilePixels = (long) tileSize * tileSize;
+        for (int tileRow = 0; tileRow < brightness.length; tileRow++) {
+            Arrays.fill(tileSums, 0);
+            for (int rowIndex = tileRow * tileSize; rowIndex < (tileRow + 1) * tileSize; rowIndex++) {
+                image.copyRow(rowIndex, 0, width, pixels);
+                if (previousPixels != null) {
+                    System.arraycopy(pixels, 0, previousPixels, rowIndex * width, width);
+                }
+                int pixelIndex = 0;
+                for (int tileColumn = 0; tileColumn < resolution; tileColumn++) {
+                    long sum = 0;
+                    for (int tileEnd = pixelIndex + tileSize; pixelIndex < tileEnd; pixelIndex++) {
+                        sum += Image.scaledLumaOf(pixels[pixelIndex]);
+                    }
+                    tileSums[tileColumn] += sum;
+                }
+            }
+            for (int tileColumn = 0; tileColumn < resolution; tileColumn++) {
+                brightness[tileRow][tileColumn] = BrightnessTable.toBrightness(tileSums[tileColumn], tilePixels);
+                changedTiles[tileRow][tileColumn] = true;
+            }
+        }
+        hasPrevious = true;
+        Metrics.record(Metrics.Stage.BRIGHTNESS, startTime);
+        return brightness;
+    }
+
+    /**
+     * Finds the tiles that differ from the previous image, stores the new pixels, and
+     * recomputes the brightness of those tiles only.
+     */
+    private void calculateChanged(Image image) {
+        long tilePixels = (long) tileSize * tileSize;
+        for (int tileRow = 0; tileRow < brightness.length; tileRow++) {
+            boolean[] changedRow = changedTiles[tileRow];
+            Arrays.fill(changedRow, false);
+            boolean anyChanged = false;
+            for (int rowIndex = tileRow * tileSize; rowIndex < (tileRow + 1) * tileSize; rowIndex++) {
+                image.copyRow(rowIndex, 0, width, pixels);
+                int rowStart = rowIndex * width;
+                // Most rows of a static scene are unchanged, which one comparison settles
+                if (Arrays.mismatch(pixels, 0, width, previousPixels, rowStart, rowStart + width) < 0) {
+                    continue;
+                }
+                for (int tileColumn = 0; tileColumn < resolution; tileColumn++) {
+                    int from = tileColumn * tileSize;
+                    if (!changedRow[tileColumn] && Arrays.mismatch(pixels, from, from + tileSize,
+                            previousPixels, rowStart + from, rowStart + from + tileSize) >= 0) {
+                        changedRow[tileColumn] = true;
+                    }
+                }
+                System.arraycopy(pixels, 0, previousPixels, rowStart, width);
+                anyChanged = true;
+            }
+            if (!anyChanged) {
+                continue;
+            }
+            for (int tileColumn = 0; tileColumn < resolution; tileColumn++) {
+                if (!changedRow[tileColumn]) {
+                    continue;
+                }
+                long sum = 0;
+                for (int rowIndex = tileRow * tileSize; rowIndex < (tileRow + 1) * tileSize; rowIndex++) {
+                    int pixelIndex = rowIndex * width + tileColumn * tileSize;
+                    for (int tileEnd = pixelIndex + tileSize; pixelIndex < tileEnd; pixelIndex++) {
+                        sum += Image.scaledLumaOf(previousPixels[pixelIndex]);
+                    }
+                }
+                brightness[tileRow][tileColumn] = BrightnessTable.toBrightness(sum, tilePixels);
+            }
+        }
+    }
+}
@@ -2,6 +2,14 @@ package image_char_matching;
 
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
 
 /**
  * Inspired by, and partly copied from
@@ -10,6 +18,11 @@ import java.awt.image.BufferedImage;
  * https://dzone.com/articles/ascii-art-generator-java
  * Adaptations made by Dan Nirel and again by Rachel Behar.
  * The class converts characters to a binary "image" (2D array of booleans).
+ * Rendered glyphs are kept in a process-wide cache keyed by font name, pixel resolution and
+ * character, which is loaded from and saved to a file so later runs never rasterize again.
+ * The file is ~/.ascii_art_glyphs, or the one named by the ascii_art.glyph_cache system
+ * property; an empty value turns the file off. Glyphs rendered since the file was loaded are
+ * saved by a shutdown hook, so a run that exits or is interrupted still keeps them.
  */
 public class CharConverter {
     private static final double X_OFFSET_FACTOR = 0.2;
@@ -17,12 +30,164 @@ public class CharConverter {
     private static final String FONT_NAME = "Courier New";
     public static final int DEFAULT_PIXEL_RESOLUTION = 16;
 
+    private static final String GLYPH_CACHE_PROPERTY = "ascii_art.glyph_cache";
+    private static final String DEFAULT_GLYPH_CACHE_FILE = ".ascii_art_glyphs";
+    private static final int GLYPH_CACHE_MAGIC = 0x47_4C_59_31; // "GLY1"
+    private static final String KEY_SEPARATOR = "\u0000";
+    private static final String SAVER_THREAD_NAME = "glyph-cache-saver";
+
+    private static final Map<String, boolean[][]> glyphCache = new ConcurrentHashMap<>();
+    private static volatile boolean glyphCacheLoaded;
+    private static volatile boolean glyphCacheDirty;
+
     /**
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
+     * The glyph is rendered only the first time it is requested; later calls copy it from the cache.
      */
     public static boolean[][] convertToBoolArray(char c) {
+        loadGlyphCache();
+        String key = FONT_NAME + KEY_SEPARATOR + DEFAULT_PIXEL_RESOLUTION + KEY_SEPARATOR + c;
+        boolean[][] matrix = glyphCache.get(key);
+        if (matrix == null) {
+            matrix = renderToBoolArray(c);
+            glyphCache.put(key, matrix);
+            glyphCacheDirty = true;
+        }
+        return copyOf(matrix);
+    }
+
+    /**
+     * Writes every cached glyph to the glyph cache file, if any glyph was rendered since the
+     * file was loaded. The file is replaced atomically; failures are logged and otherwise ignored.
+     * Called by the shutdown hook; calling it earlier saves the glyphs before the process ends.
+     */
+    public static synchronized void saveGlyphCache() {
+        Path path = getGlyphCachePath();
+        if (!glyphCacheDirty || path == null) {
+            return;
+        }
+        try {
+            Path tempPath = Files.createTempFile(path.toAbsolutePath().getParent(),
+                    path.getFileName().toString(), null);
+            try {
+                try (DataOutputStream output = new DataOutputStream(
+                        new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                    output.writeInt(GLYPH_CACHE_MAGIC);
+                    output.writeInt(glyphCache.size());
+                    for (Map.Entry<String, boolean[][]> entry : glyphCache.entrySet()) {
+                        output.writeUTF(entry.getKey());
+                        writeGlyph(output, entry.getValue());
+                    }
+                }
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+            glyphCacheDirty = false;
+        } catch (IOException e) {
+            Logger.getGlobal().warning(String.format("Failed to write glyph cache \"%s\"", path));
+        }
+    }
+
+    /**
+     * Loads the glyph cache file into memory once per process, and registers the shutdown hook
+     * that saves it. A missing file is not an error; an unreadable or corrupt file is logged
+     * and ignored.
+     */
+    private static void loadGlyphCache() {
+        if (glyphCacheLoaded) {
+            return;
+        }
+        synchronized (CharConverter.class) {
+            if (glyphCacheLoaded) {
+                return;
+            }
+            Path path = getGlyphCachePath();
+            if (path != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(CharConverter::saveGlyphCache, SAVER_THREAD_NAME));
+            }
+            if (path != null && Files.isRegularFile(path)) {
+                try (DataInputStream input = new DataInputStream(
+                        new BufferedInputStream(Files.newInputStream(path)))) {
+                    if (input.readInt() != GLYPH_CACHE_MAGIC) {
+                        throw new IOException("Bad glyph cache header");
+                    }
+                    int count = input.readInt();
+                    for (int index = 0; index < count; index++) {
+                        String key = input.readUTF();
+                        glyphCache.putIfAbsent(key, readGlyph(input));
+                    }
+                } catch (IOException e) {
+                    Logger.getGlobal().warning(String.format("Failed to read glyph cache \"%s\"", path));
+                }
+            }
+            glyphCacheLoaded = true;
+        }
+    }
+
+    /**
+     * Gets the glyph cache file, or null if the file is turned off.
+     */
+    private static Path getGlyphCachePath() {
+        String configured = System.getProperty(GLYPH_CACHE_PROPERTY);
+        if (configured != null) {
+            return configured.isEmpty() ? null : Paths.get(configured);
+        }
+        return Paths.get(System.getProperty("user.home"), DEFAULT_GLYPH_CACHE_FILE);
+    }
+
+    /**
+     * Writes a square glyph as its side length followed by its pixels packed 8 per byte.
+     */
+    private static void writeGlyph(DataOutputStream output, boolean[][] matrix) throws IOException {
+        int size = matrix.length;
+        output.writeShort(size);
+        int packed = 0;
+        int bitCount = 0;
+        for (boolean[] row : matrix) {
+            for (boolean pixel : row) {
+                packed = (packed << 1) | (pixel ? 1 : 0);
+                if (++bitCount == Byte.SIZE) {
+                    output.writeByte(packed);
+                    packed = 0;
+                    bitCount = 0;
+                }
+            }
+        }
+        if (bitCount > 0) {
+            output.writeByte(packed << (Byte.SIZE - bitCount));
+        }
+    }
+
+    private static boolean[][] readGlyph(DataInputStream input) throws IOException {
+        int size = input.readUnsignedShort();
+        boolean[][] matrix = new boolean[size][size];
+        int packed = 0;
+        int bitCount = 0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                if (bitCount == 0) {
+                    packed = input.readUnsignedByte();
+                    bitCount = Byte.SIZE;
+                }
+                bitCount--;
+                matrix[y][x] = ((packed >> bitCount) & 1) == 1;
+            }
+        }
+        return matrix;
+    }
+
+    private static boolean[][] copyOf(boolean[][] matrix) {
+        boolean[][] copy = new boolean[matrix.length][];
+        for (int y = 0; y < matrix.length; y++) {
+            copy[y] = matrix[y].clone();
+        }
+        return copy;
+    }
+
+    private static boolean[][] renderToBoolArray(char c) {
         BufferedImage img = getBufferedImage(c, FONT_NAME, DEFAULT_PIXEL_RESOLUTION);
         boolean[][] matrix = new boolean[DEFAULT_PIXEL_RESOLUTION][DEFAULT_PIXEL_RESOLUTION];
         for(int y = 0 ; y < DEFAULT_PIXEL_RESOLUTION ; y++) {
@@ -5,14 +5,28 @@ import java.util.*;
 
 /**
  * Handles matching of ASCII characters to image brightness levels.
- * Utilizes pre-computed brightness values for efficiency.
+ * Utilizes pre-computed brightness values for efficiency: normalized character brightness
+ * values are kept in a sorted primitive index, so each match is a binary search. The
+ * characters are also kept sorted by raw brightness. Adding or removing one character finds
+ * its place in both by binary search and shifts the arrays around it with one array copy,
+ * without sorting or rescanning; only a change of the brightness bounds, which moves every
+ * normalized value, rebuilds the index. Bulk additions are sorted on their own and merged
+ * into the sorted arrays, and bulk changes rebuild the index once per batch.
  * @author Salah Mahmied
  */
 public class SubImgCharMatcher {
+    private static final int LOOKUP_TABLE_SIZE = 4096;  // Number of quantized brightness levels
+    private static final String LOOKUP_TABLE_MATCH = "lut";
+
     private final Map<Character, Double> charBrightnessMap = new HashMap<>();
     private double maxBrightness = Double.MIN_VALUE;
     private double minBrightness = Double.MAX_VALUE;
     private String roundMethod;
+    private double[] sortedBrightness = new double[0];  // Raw brightness of every character, ascending
+    private char[] sortedChars = new char[0];           // The characters in the same order, ties by ASCII value
+    private CharIndex charIndex;    // Sorted normalized brightness values of the current charset
+    private boolean useLookupTable; // Whether matches are read from the quantized lookup table
+    private volatile char[] lookupTable; // Best character per quantized level, built lazily
 
     /**
      * Constructs a SubImgCharMatcher with a set of characters.
@@ -22,6 +36,26 @@ public class SubImgCharMatcher {
     public SubImgCharMatcher(char[] charset) {
         precomputeCharBrightness(charset);
         this.roundMethod = "abs";
+        sortCharsByBrightness();
+        updateIndex();
+    }
+
+    /**
+     * Constructs a snapshot of another matcher, with the same characters, brightness values
+     * and settings. No character is rasterized again, and later changes to either matcher
+     * do not affect the other.
+     * @param other The matcher to copy.
+     */
+    public SubImgCharMatcher(SubImgCharMatcher other) {
+        this.charBrightnessMap.putAll(other.charBrightnessMap);
+        this.maxBrightness = other.maxBrightness;
+        this.minBrightness = other.minBrightness;
+        this.roundMethod = other.roundMethod;
+        this.sortedBrightness = other.sortedBrightness;
+        this.sortedChars = other.sortedChars;
+        this.charIndex = other.charIndex;
+        this.useLookupTable = other.useLookupTable;
+        this.lookupTable = other.lookupTable;
     }
 
     /**
@@ -32,7 +66,9 @@ public class SubImgCharMatcher {
      * @return The closest matching character.
      */
     public char getCharByImageBrightness(double brightness) {
-
+        if (useLookupTable) {
+            return lookupClosestChar(brightness);
+        }
         return locateClosestChar(brightness);
     }
 
@@ -46,7 +82,13 @@ public class SubImgCharMatcher {
         double brightness = calculateBrightness(c);
 
         charBrightnessMap.put(c, brightness);
-        adjustBrightnessExtremes(brightness);
+        insertSorted(c, brightness);
+        if (updateBounds()) {
+            updateIndex();
+        } else {
+            charIndex = charIndex.withChar(normalize(brightness), c);
+            lookupTable = null;
+        }
 
         if (this.roundMethod.equals("up")){
             brightness = Math.ceil(brightness);
@@ -64,6 +106,16 @@ public class SubImgCharMatcher {
      * */
     public void setRoundMethod(String newRoundMethod){
         this.roundMethod = newRoundMethod;
+        this.lookupTable = null;
+    }
+
+    /** Sets the match method
+     * possible values: exact (binary search over the charset), lut (a quantized lookup table
+     * of 4096 brightness levels, with an error of at most half a level)
+     * @param newMatchMethod is a string of the new match method
+     * */
+    public void setMatchMethod(String newMatchMethod){
+        this.useLookupTable = newMatchMethod.equals(LOOKUP_TABLE_MATCH);
     }
 
     /**
@@ -72,10 +124,118 @@ public class SubImgCharMatcher {
      * @param c The character to remove.
      */
     public void removeChar(char c) {
-        if (!charBrightnessMap.containsKey(c)) return;
+        Double brightness = charBrightnessMap.remove(c);
+        if (brightness == null) return;
+
+        int position = removeSorted(c, brightness);
+        if (updateBounds()) {
+            updateIndex();
+        } else {
+            double normalized = normalize(brightness);
+            charIndex = charIndex.withoutChar(normalized, lowestCharAt(position, normalized));
+            lookupTable = null;
+        }
+    }
+
+    /**
+     * Adds several characters to the character set, updating the brightness bounds and the
+     * index once for the whole batch. Only the new characters are sorted; they are then merged
+     * into the sorted arrays. Characters already in the set are skipped.
+     * @param chars The characters to add.
+     */
+    public void addChars(char[] chars) {
+        List<Character> added = new ArrayList<>();
+        for (char c : chars) {
+            if (!charBrightnessMap.containsKey(c)) {
+                charBrightnessMap.put(c, calculateBrightness(c));
+                added.add(c);
+            }
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        added.sort(Comparator.comparingDouble((Character c) -> charBrightnessMap.get(c))
+                .thenComparing(Comparator.naturalOrder()));
 
-        charBrightnessMap.remove(c);
-        recalculateBrightnessBounds();
+        int size = sortedChars.length + added.size();
+        double[] mergedBrightness = new double[size];
+        char[] mergedChars = new char[size];
+        int existing = 0;
+        int next = 0;
+        for (int index = 0; index < size; index++) {
+            boolean takeExisting = next == added.size() || (existing < sortedChars.length &&
+                    isBefore(sortedBrightness[existing], sortedChars[existing],
+                            charBrightnessMap.get(added.get(next)), added.get(next)));
+            if (takeExisting) {
+                mergedBrightness[index] = sortedBrightness[existing];
+                mergedChars[index] = sortedChars[existing++];
+            } else {
+                mergedChars[index] = added.get(next++);
+                mergedBrightness[index] = charBrightnessMap.get(mergedChars[index]);
+            }
+        }
+        sortedBrightness = mergedBrightness;
+        sortedChars = mergedChars;
+        updateIndex();
+    }
+
+    /**
+     * Removes several characters from the character set, updating the brightness bounds and
+     * the index once for the whole batch. Characters not in the set are skipped.
+     * @param chars The characters to remove.
+     */
+    public void removeChars(char[] chars) {
+        boolean changed = false;
+        for (char c : chars) {
+            changed |= charBrightnessMap.remove(c) != null;
+        }
+        if (!changed) {
+            return;
+        }
+
+        // Keep the remaining characters in their sorted order
+        int size = 0;
+        for (int index = 0; index < sortedChars.length; index++) {
+            if (charBrightnessMap.containsKey(sortedChars[index])) {
+                size++;
+            }
+        }
+        double[] remainingBrightness = new double[size];
+        char[] remainingChars = new char[size];
+        size = 0;
+        for (int index = 0; index < sortedChars.length; index++) {
+            if (charBrightnessMap.containsKey(sortedChars[index])) {
+                remainingBrightness[size] = sortedBrightness[index];
+                remainingChars[size++] = sortedChars[index];
+            }
+        }
+        sortedBrightness = remainingBrightness;
+        sortedChars = remainingChars;
+        updateIndex();
+    }
+
+    /**
+     * Replaces the character set with the given characters, updating the brightness bounds
+     * and the index once. Brightness values of characters that stay in the set are reused.
+     * @param chars The characters of the new set.
+     */
+    public void replaceChars(char[] chars) {
+        Map<Character, Double> previousBrightness = new HashMap<>(charBrightnessMap);
+        charBrightnessMap.clear();
+        for (char c : chars) {
+            Double brightness = previousBrightness.get(c);
+            charBrightnessMap.put(c, brightness != null ? brightness : calculateBrightness(c));
+        }
+        sortCharsByBrightness();
+        updateIndex();
+    }
+
+    /**
+     * Gets the number of characters in the current set.
+     * @return The size of the character set.
+     */
+    public int getCharCount() {
+        return charBrightnessMap.size();
     }
 
     /**
@@ -94,10 +254,7 @@ public class SubImgCharMatcher {
      */
     private void precomputeCharBrightness(char[] charset) {
         for (char c : charset) {
-            double brightness = calculateBrightness(c);
-            charBrightnessMap.put(c, brightness);
-            maxBrightness = Math.max(maxBrightness, brightness);
-            minBrightness = Math.min(minBrightness, brightness);
+            charBrightnessMap.put(c, calculateBrightness(c));
         }
     }
 
@@ -127,15 +284,6 @@ public class SubImgCharMatcher {
         return whiteCount;
     }
 
-    /**
-     * Normalizes a brightness value based on the current minimum and maximum brightness values.
-     * @param brightness The brightness value to normalize.
-     * @return The normalized brightness value between 0 and 1.
-     */
-    private double normalizeBrightnessValue(double brightness) {
-        return (brightness - minBrightness) / (maxBrightness - minBrightness);
-    }
-
     /**
      * Finds the character with the closest brightness value to the target brightness.
      * Uses the smallest ASCII value as a tiebreaker when differences are equal.
@@ -143,50 +291,301 @@ public class SubImgCharMatcher {
      * @return The character closest to the given brightness value.
      */
     private char locateClosestChar(double targetBrightness) {
-        char closestChar = '\0';
-        double smallestDifference = Double.MAX_VALUE;
-
-        for (Map.Entry<Character, Double> entry : charBrightnessMap.entrySet()) {
-            char character = entry.getKey();
-            double normalizedBrightness = normalizeBrightnessValue(entry.getValue());
-            double difference = Math.abs(normalizedBrightness - targetBrightness);
-
-            if (difference < smallestDifference ||
-                    (difference == smallestDifference && character < closestChar)) {
-                closestChar = character;
-                smallestDifference = difference;
+        return charIndex.closestChar(targetBrightness);
+    }
+
+    /**
+     * Finds the character for the quantized brightness level nearest to the target brightness.
+     * The lookup table is rebuilt on first use after the charset or round method changed.
+     * @param targetBrightness The target brightness value.
+     * @return The character matched to the nearest quantized brightness level.
+     */
+    private char lookupClosestChar(double targetBrightness) {
+        char[] table = lookupTable;
+        if (table == null) {
+            table = buildLookupTable();
+            lookupTable = table;
+        }
+        int level = (int) Math.round(targetBrightness * (LOOKUP_TABLE_SIZE - 1));
+        return table[Math.max(0, Math.min(LOOKUP_TABLE_SIZE - 1, level))];
+    }
+
+    /**
+     * Builds a table of the closest character to each of the evenly spaced brightness levels.
+     * @return The best character for each quantized brightness level.
+     */
+    private char[] buildLookupTable() {
+        char[] table = new char[LOOKUP_TABLE_SIZE];
+        for (int level = 0; level < LOOKUP_TABLE_SIZE; level++) {
+            table[level] = locateClosestChar((double) level / (LOOKUP_TABLE_SIZE - 1));
+        }
+        return table;
+    }
+
+    /**
+     * Sorts the whole character set by brightness, then by ASCII value.
+     */
+    private void sortCharsByBrightness() {
+        List<Character> characters = new ArrayList<>(charBrightnessMap.keySet());
+        characters.sort(Comparator.comparingDouble((Character c) -> charBrightnessMap.get(c))
+                .thenComparing(Comparator.naturalOrder()));
+        sortedBrightness = new double[characters.size()];
+        sortedChars = new char[characters.size()];
+        for (int index = 0; index < sortedChars.length; index++) {
+            sortedChars[index] = characters.get(index);
+            sortedBrightness[index] = charBrightnessMap.get(sortedChars[index]);
+        }
+    }
+
+    /**
+     * Inserts a character into the sorted arrays at its brightness position.
+     * The arrays are replaced rather than modified, since snapshots may share them.
+     * @param c The character to insert.
+     * @param brightness The brightness of the character.
+     * @return The position the character was inserted at.
+     */
+    private int insertSorted(char c, double brightness) {
+        int position = findSortedPosition(c, brightness);
+        double[] newBrightness = new double[sortedBrightness.length + 1];
+        char[] newChars = new char[sortedChars.length + 1];
+        System.arraycopy(sortedBrightness, 0, newBrightness, 0, position);
+        System.arraycopy(sortedChars, 0, newChars, 0, position);
+        newBrightness[position] = brightness;
+        newChars[position] = c;
+        System.arraycopy(sortedBrightness, position, newBrightness, position + 1, sortedBrightness.length - position);
+        System.arraycopy(sortedChars, position, newChars, position + 1, sortedChars.length - position);
+        sortedBrightness = newBrightness;
+        sortedChars = newChars;
+        return position;
+    }
+
+    /**
+     * Removes a character from the sorted arrays.
+     * The arrays are replaced rather than modified, since snapshots may share them.
+     * @param c The character to remove.
+     * @param brightness The brightness of the character.
+     * @return The position the character was removed from, now holding the next character.
+     */
+    private int removeSorted(char c, double brightness) {
+        int position = findSortedPosition(c, brightness);
+        double[] newBrightness = new double[sortedBrightness.length - 1];
+        char[] newChars = new char[sortedChars.length - 1];
+        System.arraycopy(sortedBrightness, 0, newBrightness, 0, position);
+        System.arraycopy(sortedChars, 0, newChars, 0, position);
+        System.arraycopy(sortedBrightness, position + 1, newBrightness, position, newBrightness.length - position);
+        System.arraycopy(sortedChars, position + 1, newChars, position, newChars.length - position);
+        sortedBrightness = newBrightness;
+        sortedChars = newChars;
+        return position;
+    }
+
+    /**
+     * Finds the first position in the sorted arrays that is not before the given character.
+     * @param c The character.
+     * @param brightness The brightness of the character.
+     * @return The position of the character, or where it would be inserted.
+     */
+    private int findSortedPosition(char c, double brightness) {
+        int low = 0;
+        int high = sortedChars.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (isBefore(sortedBrightness[middle], sortedChars[middle], brightness, c)) {
+                low = middle + 1;
+            } else {
+                high = middle;
             }
         }
+        return low;
+    }
 
-        return closestChar;
+    /**
+     * Checks whether one character sorts before another: by brightness, then by ASCII value.
+     */
+    private static boolean isBefore(double brightness, char c, double otherBrightness, char other) {
+        return brightness < otherBrightness || (brightness == otherBrightness && c < other);
     }
 
     /**
-     * Updates the minimum and maximum brightness values after adding a new character.
-     * @param brightness The brightness of the newly added character.
+     * Finds the lowest character of the sorted arrays whose normalized brightness equals the
+     * given value. Such characters are adjacent, so only the run around the position is read.
+     * @param position A position next to the run, such as where a character was removed.
+     * @param normalized The normalized brightness value.
+     * @return The lowest such character, or '\0' if there is none.
      */
-    private void adjustBrightnessExtremes(double brightness) {
-        maxBrightness = Math.max(maxBrightness, brightness);
-        minBrightness = Math.min(minBrightness, brightness);
+    private char lowestCharAt(int position, double normalized) {
+        char lowest = Character.MAX_VALUE;
+        boolean found = false;
+        for (int index = position - 1; index >= 0 && normalize(sortedBrightness[index]) == normalized; index--) {
+            lowest = (char) Math.min(lowest, sortedChars[index]);
+            found = true;
+        }
+        for (int index = position; index < sortedChars.length &&
+                normalize(sortedBrightness[index]) == normalized; index++) {
+            lowest = (char) Math.min(lowest, sortedChars[index]);
+            found = true;
+        }
+        return found ? lowest : '\0';
+    }
+
+    private double normalize(double brightness) {
+        return (brightness - minBrightness) / (maxBrightness - minBrightness);
     }
 
     /**
-     * Recomputes the minimum and maximum brightness values by iterating over the map.
-     * Resets the bounds to their initial values if the map is empty.
+     * Reads the brightness bounds off the ends of the sorted arrays. Resets the bounds to
+     * their initial values if the set is empty.
+     * @return Whether the bounds changed, or cannot normalize (fewer than two distinct values),
+     *         in which case the index must be rebuilt.
      */
-    private void recalculateBrightnessBounds() {
-        if (charBrightnessMap.isEmpty()) {
+    private boolean updateBounds() {
+        double previousMin = minBrightness;
+        double previousMax = maxBrightness;
+        if (sortedBrightness.length == 0) {
             maxBrightness = Double.MIN_VALUE;
             minBrightness = Double.MAX_VALUE;
-            return;
+        } else {
+            maxBrightness = Math.max(Double.MIN_VALUE, sortedBrightness[sortedBrightness.length - 1]);
+            minBrightness = Math.min(Double.MAX_VALUE, sortedBrightness[0]);
         }
+        return minBrightness != previousMin || maxBrightness != previousMax || minBrightness >= maxBrightness;
+    }
 
-        maxBrightness = Double.MIN_VALUE;
-        minBrightness = Double.MAX_VALUE;
+    /**
+     * Updates the brightness bounds, rebuilds the normalized index from them and drops the
+     * lookup table.
+     */
+    private void updateIndex() {
+        updateBounds();
+        charIndex = new CharIndex(sortedBrightness, sortedChars, minBrightness, maxBrightness);
+        lookupTable = null;
+    }
 
-        for (double brightness : charBrightnessMap.values()) {
-            maxBrightness = Math.max(maxBrightness, brightness);
-            minBrightness = Math.min(minBrightness, brightness);
+    /**
+     * An immutable snapshot of the charset, sorted by normalized brightness.
+     * Characters sharing a brightness value are collapsed into the one with the lowest
+     * ASCII value, since it always wins the tie.
+     */
+    private static final class CharIndex {
+        private final double[] brightness;  // Distinct normalized brightness values, ascending
+        private final char[] chars;         // The lowest character with each brightness value
+
+        private CharIndex(double[] rawBrightness, char[] rawChars, double minBrightness,
+                          double maxBrightness) {
+            int size = rawChars.length;
+            double[] sortedBrightness = new double[size];
+            char[] sortedChars = new char[size];
+
+            // Normalizing keeps the raw order, so the input needs no sorting
+            int distinct = 0;
+            for (int index = 0; index < size; index++) {
+                double normalized = (rawBrightness[index] - minBrightness) / (maxBrightness - minBrightness);
+                if (distinct == 0 || normalized != sortedBrightness[distinct - 1]) {
+                    sortedBrightness[distinct] = normalized;
+                    sortedChars[distinct] = rawChars[index];
+                    distinct++;
+                } else {
+                    sortedChars[distinct - 1] = (char) Math.min(sortedChars[distinct - 1], rawChars[index]);
+                }
+            }
+            this.brightness = Arrays.copyOf(sortedBrightness, distinct);
+            this.chars = Arrays.copyOf(sortedChars, distinct);
+        }
+
+        private CharIndex(double[] brightness, char[] chars) {
+            this.brightness = brightness;
+            this.chars = chars;
+        }
+
+        /**
+         * Gets an index that also holds the character, with the bounds unchanged.
+         * @param normalized The normalized brightness of the character
+         * @param c The character
+         */
+        private CharIndex withChar(double normalized, char c) {
+            int position = Arrays.binarySearch(brightness, normalized);
+            if (position >= 0) {
+                if (chars[position] < c) {
+                    return this;
+                }
+                char[] newChars = chars.clone();
+                newChars[position] = c;
+                return new CharIndex(brightness, newChars);
+            }
+            position = -position - 1;
+            double[] newBrightness = new double[brightness.length + 1];
+            char[] newChars = new char[chars.length + 1];
+            System.arraycopy(brightness, 0, newBrightness, 0, position);
+            System.arraycopy(chars, 0, newChars, 0, position);
+            newBrightness[position] = normalized;
+            newChars[position] = c;
+            System.arraycopy(brightness, position, newBrightness, position + 1, brightness.length - position);
+            System.arraycopy(chars, position, newChars, position + 1, chars.length - position);
+            return new CharIndex(newBrightness, newChars);
+        }
+
+        /**
+         * Gets an index without a removed character, with the bounds unchanged.
+         * @param normalized The normalized brightness of the removed character
+         * @param replacement The lowest remaining character with that brightness, or '\0' if none
+         */
+        private CharIndex withoutChar(double normalized, char replacement) {
+            int position = Arrays.binarySearch(brightness, normalized);
+            if (replacement != '\0') {
+                if (chars[position] == replacement) {
+                    return this;
+                }
+                char[] newChars = chars.clone();
+                newChars[position] = replacement;
+                return new CharIndex(brightness, newChars);
+            }
+            double[] newBrightness = new double[brightness.length - 1];
+            char[] newChars = new char[chars.length - 1];
+            System.arraycopy(brightness, 0, newBrightness, 0, position);
+            System.arraycopy(chars, 0, newChars, 0, position);
+            System.arraycopy(brightness, position + 1, newBrightness, position, newBrightness.length - position);
+            System.arraycopy(chars, position + 1, newChars, position, newChars.length - position);
+            return new CharIndex(newBrightness, newChars);
+        }
+
+        /**
+         * Finds the character whose normalized brightness is closest to the target,
+         * preferring the lowest ASCII value on ties. Returns '\0' when no character has a
+         * comparable brightness (an empty charset, or one where all brightness values are equal).
+         */
+        private char closestChar(double targetBrightness) {
+            int insertionPoint = Arrays.binarySearch(brightness, targetBrightness);
+            if (insertionPoint < 0) {
+                insertionPoint = -insertionPoint - 1;
+            }
+
+            // The closest value is one of the two neighbours of the insertion point
+            char closestChar = '\0';
+            double smallestDifference = Double.MAX_VALUE;
+            int first = Math.max(0, insertionPoint - 1);
+            int last = Math.min(brightness.length - 1, insertionPoint);
+            for (int index = first; index <= last; index++) {
+                double difference = Math.abs(brightness[index] - targetBrightness);
+                if (difference < smallestDifference ||
+                        (difference == smallestDifference && chars[index] < closestChar)) {
+                    closestChar = chars[index];
+                    smallestDifference = difference;
+                }
+            }
+            if (closestChar == '\0') {
+                return closestChar;
+            }
+
+            // Rounding can make farther values produce the same difference; include them in the tie
+            for (int index = first - 1; index >= 0 &&
+                    Math.abs(brightness[index] - targetBrightness) == smallestDifference; index--) {
+                closestChar = (char) Math.min(closestChar, chars[index]);
+            }
+            for (int index = last + 1; index < brightness.length &&
+                    Math.abs(brightness[index] - targetBrightness) == smallestDifference; index++) {
+                closestChar = (char) Math.min(closestChar, chars[index]);
+            }
+            return closestChar;
         }
     }
 
@@ -0,0 +1,308 @@
+package metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide timers and counters for the conversion pipeline.
+ * Each {@link Stage} accumulates its number of timed intervals, total and maximum duration,
+ * and the bytes allocated by the measuring thread; each {@link Counter} accumulates a count.
+ * All updates go through striped adders, so concurrent conversions do not contend.
+ * When metrics are disabled every entry point returns after a single volatile read, so the
+ * instrumentation can stay in place at close to zero cost. Metrics are disabled unless the
+ * ascii_art.metrics system property is true or the stats command turns them on. Allocated
+ * bytes cost a thread bean call per measurement, so they are measured only when the
+ * ascii_art.metrics.allocations property is true as well, and only around whole stages;
+ * calls made once per row, band or frame are timed without them.
+ * @author Salah Mahmied
+ */
+public final class Metrics {
+
+    /** The pipeline stages that are timed. */
+    public enum Stage { DECODE, PAD, SUB_IMAGES, BRIGHTNESS, COLOR, MATCH, OUTPUT }
+
+    /** The quantities that are counted. */
+    public enum Counter { CONVERSIONS, TILES, PIXELS, BRIGHTNESS_CACHE_HITS, BRIGHTNESS_CACHE_MISSES }
+
+    /**
+     * The start value returned by {@link #now} and {@link #allocatedBytes} while disabled.
+     * Neither a monotonic clock reading during a run nor an allocation count reaches it.
+     */
+    public static final long DISABLED = Long.MIN_VALUE;
+
+    private static final String ENABLED_PROPERTY = "ascii_art.metrics";
+    private static final String ALLOCATIONS_PROPERTY = "ascii_art.metrics.allocations";
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024;
+    private static final String PROMETHEUS_PREFIX = "ascii_art_";
+    private static final String STAGE_HEADER_FORMAT = "%-12s %8s %12s %10s %10s %12s%n";
+    private static final String STAGE_FORMAT = "%-12s %8d %12.3f %10.3f %10.3f %12.2f%n";
+    private static final String COUNTER_FORMAT = "%-24s %d%n";
+
+    private static final com.sun.management.ThreadMXBean ALLOCATION_BEAN = createAllocationBean();
+    private static final StageMetrics[] STAGES = new StageMetrics[Stage.values().length];
+    private static final LongAdder[] COUNTERS = new LongAdder[Counter.values().length];
+    private static final boolean ALLOCATIONS_ENABLED = Boolean.getBoolean(ALLOCATIONS_PROPERTY);
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
+    static {
+        for (int index = 0; index < STAGES.length; index++) {
+            STAGES[index] = new StageMetrics();
+        }
+        for (int index = 0; index < COUNTERS.length; index++) {
+            COUNTERS[index] = new LongAdder();
+        }
+    }
+
+    // Private constructor to prevent instantiation
+    private Metrics() {}
+
+    /**
+     * Checks whether metrics are being collected.
+     * @return true if metrics are enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns metric collection on or off. Values collected so far are kept.
+     * @param newEnabled Whether to collect metrics
+     */
+    public static void setEnabled(boolean newEnabled) {
+        enabled = newEnabled;
+    }
+
+    /**
+     * Gets the start time of an interval.
+     * @return The current {@link System#nanoTime}, or {@link #DISABLED} while disabled
+     */
+    public static long now() {
+        return enabled ? System.nanoTime() : DISABLED;
+    }
+
+    /**
+     * Gets the number of bytes the calling thread has allocated so far.
+     * @return The allocated bytes, or {@link #DISABLED} while disabled, when allocations are
+     *         not measured or when unsupported
+     */
+    public static long allocatedBytes() {
+        return enabled && ALLOCATIONS_ENABLED && ALLOCATION_BEAN != null ?
+                ALLOCATION_BEAN.getCurrentThreadAllocatedBytes() : DISABLED;
+    }
+
+    /**
+     * Records one interval of a stage that started at the given time and allocation values
+     * and ends now, on the same thread. Intervals started while disabled are ignored.
+     * @param stage The stage the interval belongs to
+     * @param startTime The value of {@link #now} at the start of the interval
+     * @param startAllocatedBytes The value of {@link #allocatedBytes} at the start of the interval
+     */
+    public static void record(Stage stage, long startTime, long startAllocatedBytes) {
+        if (!enabled || startTime == DISABLED) {
+            return;
+        }
+        long allocated = startAllocatedBytes == DISABLED ? 0 : allocatedBytes() - startAllocatedBytes;
+        add(stage, System.nanoTime() - startTime, allocated);
+    }
+
+    /**
+     * Records one interval of a stage that started at the given time and ends now, without
+     * allocated bytes. Used by calls made per row, band or frame. Intervals started while
+     * disabled are ignored.
+     * @param stage The stage the interval belongs to
+     * @param startTime The value of {@link #now} at the start of the interval
+     */
+    public static void record(Stage stage, long startTime) {
+        if (!enabled || startTime == DISABLED) {
+            return;
+        }
+        add(stage, System.nanoTime() - startTime, 0);
+    }
+
+    /**
+     * Records one interval of a stage whose duration was measured by the caller, for work
+     * that is interleaved with other stages.
+     * @param stage The stage the interval belongs to
+     * @param nanos The duration of the interval
+     * @param allocated The bytes allocated during the interval
+     */
+    public static void add(Stage stage, long nanos, long allocated) {
+        if (!enabled) {
+            return;
+        }
+        StageMetrics metrics = STAGES[stage.ordinal()];
+        metrics.count.increment();
+        metrics.totalNanos.add(nanos);
+        metrics.maxNanos.accumulate(nanos);
+        metrics.allocatedBytes.add(allocated);
+    }
+
+    /**
+     * Adds to a counter.
+     * @param counter The counter to increase
+     * @param amount The amount to add
+     */
+    public static void count(Counter counter, long amount) {
+        if (enabled) {
+            COUNTERS[counter.ordinal()].add(amount);
+        }
+    }
+
+    /**
+     * Resets every timer and counter to zero.
+     */
+    public static void reset() {
+        for (StageMetrics metrics : STAGES) {
+            metrics.count.reset();
+            metrics.totalNanos.reset();
+            metrics.maxNanos.reset();
+            metrics.allocatedBytes.reset();
+        }
+        for (LongAdder counter : COUNTERS) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * Formats all metrics as a human-readable table.
+     * @return The table, one line per stage and counter
+     */
+    public static String format() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, STAGE_HEADER_FORMAT,
+                "stage", "count", "total ms", "mean ms", "max ms", "alloc MB"));
+        for (Stage stage : Stage.values()) {
+            StageMetrics metrics = STAGES[stage.ordinal()];
+            long count = metrics.count.sum();
+            long totalNanos = metrics.totalNanos.sum();
+            builder.append(String.format(Locale.ROOT, STAGE_FORMAT, name(stage), count,
+                    totalNanos / NANOS_PER_MILLI, count == 0 ? 0 : totalNanos / NANOS_PER_MILLI / count,
+                    metrics.maxNanos.get() / NANOS_PER_MILLI,
+                    metrics.allocatedBytes.sum() / BYTES_PER_MEGABYTE));
+        }
+        for (Counter counter : Counter.values()) {
+            builder.append(String.format(Locale.ROOT, COUNTER_FORMAT, name(counter),
+                    COUNTERS[counter.ordinal()].sum()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Formats all metrics as a JSON object.
+     * @return The JSON text
+     */
+    public static String toJson() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"enabled\":").append(enabled).append(",\"stages\":{");
+        for (Stage stage : Stage.values()) {
+            StageMetrics metrics = STAGES[stage.ordinal()];
+            if (stage.ordinal() > 0) {
+                builder.append(',');
+            }
+            builder.append('"').append(name(stage)).append("\":{")
+                    .append("\"count\":").append(metrics.count.sum())
+                    .append(",\"totalNanos\":").append(metrics.totalNanos.sum())
+                    .append(",\"maxNanos\":").append(metrics.maxNanos.get())
+                    .append(",\"allocatedBytes\":").append(metrics.allocatedBytes.sum())
+                    .append('}');
+        }
+        builder.append("},\"counters\":{");
+        for (Counter counter : Counter.values()) {
+            if (counter.ordinal() > 0) {
+                builder.append(',');
+            }
+            builder.append('"').append(name(counter)).append("\":").append(COUNTERS[counter.ordinal()].sum());
+        }
+        return builder.append("}}\n").toString();
+    }
+
+    /**
+     * Formats all metrics in the Prometheus text exposition format.
+     * @return The exposition text
+     */
+    public static String toPrometheus() {
+        StringBuilder builder = new StringBuilder();
+        appendStageFamily(builder, "stage_count_total", "counter", "Timed intervals per stage");
+        for (Stage stage : Stage.values()) {
+            appendStageSample(builder, "stage_count_total", stage, STAGES[stage.ordinal()].count.sum());
+        }
+        appendStageFamily(builder, "stage_seconds_total", "counter", "Time spent per stage");
+        for (Stage stage : Stage.values()) {
+            appendStageSample(builder, "stage_seconds_total", stage,
+                    STAGES[stage.ordinal()].totalNanos.sum() / NANOS_PER_SECOND);
+        }
+        appendStageFamily(builder, "stage_max_seconds", "gauge", "Longest interval per stage");
+        for (Stage stage : Stage.values()) {
+            appendStageSample(builder, "stage_max_seconds", stage,
+                    STAGES[stage.ordinal()].maxNanos.get() / NANOS_PER_SECOND);
+        }
+        appendStageFamily(builder, "stage_allocated_bytes_total", "counter", "Bytes allocated per stage");
+        for (Stage stage : Stage.values()) {
+            appendStageSample(builder, "stage_allocated_bytes_total", stage,
+                    STAGES[stage.ordinal()].allocatedBytes.sum());
+        }
+        for (Counter counter : Counter.values()) {
+            String metric = PROMETHEUS_PREFIX + name(counter) + "_total";
+            builder.append("# TYPE ").append(metric).append(" counter\n")
+                    .append(metric).append(' ').append(COUNTERS[counter.ordinal()].sum()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes all metrics to a file, replacing it.
+     * @param path The file to write
+     * @param prometheus true for the Prometheus text format, false for JSON
+     * @throws IOException If the file cannot be written
+     */
+    public static void export(Path path, boolean prometheus) throws IOException {
+        Files.write(path, (prometheus ? toPrometheus() : toJson()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendStageFamily(StringBuilder builder, String metric, String type, String help) {
+        builder.append("# HELP ").append(PROMETHEUS_PREFIX).append(metric).append(' ').append(help).append('\n')
+                .append("# TYPE ").append(PROMETHEUS_PREFIX).append(metric).append(' ').append(type).append('\n');
+    }
+
+    private static void appendStageSample(StringBuilder builder, String metric, Stage stage, Object value) {
+        builder.append(PROMETHEUS_PREFIX).append(metric).append("{stage=\"").append(name(stage)).append("\"} ")
+                .append(value).append('\n');
+    }
+
+    private static String name(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Gets the bean that reports per-thread allocation, if the runtime supports it.
+     */
+    private static com.sun.management.ThreadMXBean createAllocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+            if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+                return allocationBean;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The accumulated intervals of one stage.
+     */
+    private static final class StageMetrics {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder allocatedBytes = new LongAdder();
+    }
+}
@@ -0,0 +1,168 @@
+package ascii_art;
+
+import ascii_output.AnimationOutput;
+import ascii_output.TerminalAnimationOutput;
+import image.TileBrightnessTest;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Checks that delta animation reproduces full frames: an incremental conversion, which
+ * rematches only changed tiles, yields every frame of a full conversion, and replaying the
+ * delta terminal output on an emulated screen shows every frame whole.
+ * @author Salah Mahmied
+ */
+public class AnimationDeltaTest {
+
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 72;
+    private static final int FRAMES = 40;
+    private static final int[] RESOLUTIONS = {4, 16, 64};
+    private static final char FIRST_CHAR = ' ';
+    private static final char LAST_CHAR = '~';
+    private static final int CELL_COLUMNS = 2;      // Every character is followed by a space
+    private static final byte ESCAPE = 033;
+    private static final long SEED = 23;
+
+    public static void main(String[] args) throws IOException {
+        char[] charset = new char[LAST_CHAR - FIRST_CHAR + 1];
+        for (int index = 0; index < charset.length; index++) {
+            charset[index] = (char) (FIRST_CHAR + index);
+        }
+        Path directory = writeFrames(TileBrightnessTest.frameSequence(new Random(SEED), WIDTH, HEIGHT, FRAMES));
+        try {
+            for (int resolution : RESOLUTIONS) {
+                List<char[][]> full = convert(directory, charset, resolution, false);
+                List<char[][]> incremental = convert(directory, charset, resolution, true);
+                for (int frame = 0; frame < full.size(); frame++) {
+                    if (!Arrays.deepEquals(full.get(frame), incremental.get(frame))) {
+                        throw new AssertionError(String.format(
+                                "Incremental frame %d at resolution %d differs", frame, resolution));
+                    }
+                }
+                checkTerminalReplay(full, resolution);
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+        System.out.println("AnimationDeltaTest passed");
+    }
+
+    private static Path writeFrames(int[][] frames) throws IOException {
+        Path directory = Files.createTempDirectory("frames");
+        for (int frame = 0; frame < frames.length; frame++) {
+            BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            image.setRGB(0, 0, WIDTH, HEIGHT, frames[frame], 0, WIDTH);
+            ImageIO.write(image, "png", directory.resolve("frame" + frame + ".png").toFile());
+        }
+        return directory;
+    }
+
+    private static List<char[][]> convert(Path directory, char[] charset, int resolution,
+                                          boolean incremental) throws IOException {
+        List<char[][]> frames = new ArrayList<>();
+        new AnimationConverter(directory.toString(), charset, resolution, 0, incremental).run(
+                new AnimationOutput() {
+                    @Override
+                    public void begin(int width, int height) {}
+
+                    @Override
+                    public void frame(char[][] chars, int delay) {
+                        char[][] copy = new char[chars.length][];
+                        for (int row = 0; row < chars.length; row++) {
+                            copy[row] = chars[row].clone();
+                        }
+                        frames.add(copy);
+                    }
+
+                    @Override
+                    public void end() {}
+                });
+        if (frames.size() != FRAMES) {
+            throw new AssertionError(String.format("Expected %d frames but got %d", FRAMES, frames.size()));
+        }
+        return frames;
+    }
+
+    /**
+     * Writes the frames through the delta terminal output and replays each frame's bytes on
+     * an emulated screen, which must then show the whole frame.
+     */
+    private static void checkTerminalReplay(List<char[][]> frames, int resolution) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        TerminalAnimationOutput output = new TerminalAnimationOutput(bytes, false, true);
+        int rows = frames.get(0).length;
+        int columns = frames.get(0)[0].length;
+        char[][] screen = new char[rows][columns * CELL_COLUMNS];
+        int[] cursor = new int[2];
+        output.begin(columns, rows);
+        for (int frame = 0; frame < frames.size(); frame++) {
+            output.frame(frames.get(frame), 0);
+            replay(bytes.toByteArray(), screen, cursor);
+            bytes.reset();
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    if (screen[row][column * CELL_COLUMNS] != frames.get(frame)[row][column] ||
+                            screen[row][column * CELL_COLUMNS + 1] != ' ') {
+                        throw new AssertionError(String.format(
+                                "Replayed frame %d at resolution %d differs at row %d, column %d",
+                                frame, resolution, row, column));
+                    }
+                }
+            }
+        }
+        output.end();
+    }
+
+    /**
+     * Applies terminal output to a screen: printable ASCII, line breaks, clearing the screen,
+     * and moving the cursor home or to a row and column. Other sequences are ignored.
+     */
+    private static void replay(byte[] bytes, char[][] screen, int[] cursor) {
+        int index = 0;
+        while (index < bytes.length) {
+            byte current = bytes[index++];
+            if (current == ESCAPE) {
+                int parametersStart = ++index;  // Skips the '['
+                while (!Character.isLetter(bytes[index])) {
+                    index++;
+                }
+                String parameters = new String(bytes, parametersStart, index - parametersStart,
+                        StandardCharsets.US_ASCII);
+                byte command = bytes[index++];
+                if (command == 'J') {
+                    for (char[] row : screen) {
+                        Arrays.fill(row, ' ');
+                    }
+                } else if (command == 'H') {
+                    String[] position = parameters.isEmpty() ? new String[] {"1", "1"} : parameters.split(";");
+                    cursor[0] = Integer.parseInt(position[0]) - 1;
+                    cursor[1] = Integer.parseInt(position[1]) - 1;
+                }
+            } else if (current == '\n') {
+                cursor[0]++;
+                cursor[1] = 0;
+            } else if (current == '\r') {
+                cursor[1] = 0;
+            } else {
+                screen[cursor[0]][cursor[1]++] = (char) current;
+            }
+        }
+    }
+}
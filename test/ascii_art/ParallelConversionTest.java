@@ -0,0 +1,77 @@
+package ascii_art;
+
+import image.BrightnessCache;
+import image.Image;
+import image.ImageEditor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that converting on a pool gives exactly the characters of a sequential conversion,
+ * for several pool sizes, images and resolutions.
+ * @author Salah Mahmied
+ */
+public class ParallelConversionTest {
+
+    private static final int[] PARALLELISMS = {2, 3, 8};
+    private static final int[][] SIZES = {{64, 64}, {100, 37}, {33, 257}, {512, 256}};
+    private static final char FIRST_CHAR = ' ';
+    private static final char LAST_CHAR = '~';
+    private static final int MAX_RGB_VALUE = 255;
+    private static final long SEED = 5;
+
+    public static void main(String[] args) {
+        List<Character> charset = new ArrayList<>();
+        for (char character = FIRST_CHAR; character <= LAST_CHAR; character++) {
+            charset.add(character);
+        }
+        Random random = new Random(SEED);
+        for (int parallelism : PARALLELISMS) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                for (int[] size : SIZES) {
+                    Image image = gradientImage(random, size[0], size[1]);
+                    Image paddedImage = ImageEditor.padImageDimensions(image);
+                    // The Shell's bounds: at least one tile row, at most one tile per pixel
+                    int minResolution = Math.max(1, paddedImage.getWidth() / paddedImage.getHeight());
+                    for (int resolution = minResolution; resolution <= paddedImage.getWidth(); resolution *= 2) {
+                        // Fresh caches, so both runs compute the summed-area table themselves
+                        char[][] sequential = new AsciiArtAlgorithm(charset, image, resolution,
+                                new BrightnessCache()).run();
+                        char[][] parallel = new AsciiArtAlgorithm(charset, image, resolution,
+                                new BrightnessCache()).run(pool);
+                        if (!Arrays.deepEquals(sequential, parallel)) {
+                            throw new AssertionError(String.format(
+                                    "%dx%d at resolution %d on %d threads differs from sequential",
+                                    size[0], size[1], resolution, parallelism));
+                        }
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        System.out.println("ParallelConversionTest passed");
+    }
+
+    /**
+     * A diagonal gradient with noise, so tiles span the whole brightness range.
+     */
+    private static Image gradientImage(Random random, int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int level = (row + column) * MAX_RGB_VALUE / (width + height);
+                int red = Math.min(MAX_RGB_VALUE, level + random.nextInt(16));
+                int green = Math.min(MAX_RGB_VALUE, level + random.nextInt(16));
+                int blue = Math.min(MAX_RGB_VALUE, level + random.nextInt(16));
+                pixels[row * width + column] = 0xFF000000 | red << 16 | green << 8 | blue;
+            }
+        }
+        return new Image(pixels, width, height);
+    }
+}
@@ -0,0 +1,90 @@
+package image;
+
+import java.awt.*;
+import java.util.Random;
+
+/**
+ * Checks that brightness read from a summed-area table equals the brightness of the same
+ * region summed pixel by pixel, as the original per-tile loop computed it.
+ * @author Salah Mahmied
+ */
+public class BrightnessTableTest {
+
+    private static final int MAX_RGB_VALUE = 255;
+    private static final double GREY_SCALE_RED_FACTOR = 0.2126;
+    private static final double GREY_SCALE_GREEN_FACTOR = 0.7152;
+    private static final double GREY_SCALE_BLUE_FACTOR = 0.0722;
+    private static final double TOLERANCE = 1e-9;
+    private static final int[][] SIZES = {{1, 1}, {16, 16}, {64, 32}, {37, 23}, {128, 256}};
+    private static final int REGIONS_PER_IMAGE = 200;
+    private static final long SEED = 42;
+
+    public static void main(String[] args) {
+        Random random = new Random(SEED);
+        for (int[] size : SIZES) {
+            Image image = ImageEditor.padImageDimensions(randomImage(random, size[0], size[1]));
+            BrightnessTable table = new BrightnessTable(image);
+            for (int resolution = 1; resolution <= image.getWidth(); resolution *= 2) {
+                checkTiles(image, table, resolution);
+            }
+            for (int region = 0; region < REGIONS_PER_IMAGE; region++) {
+                int row = random.nextInt(image.getHeight());
+                int column = random.nextInt(image.getWidth());
+                int height = 1 + random.nextInt(image.getHeight() - row);
+                int width = 1 + random.nextInt(image.getWidth() - column);
+                check(table.getRegionBrightness(row, column, height, width),
+                        pixelBrightness(image, row, column, height, width), "region");
+            }
+        }
+        System.out.println("BrightnessTableTest passed");
+    }
+
+    private static void checkTiles(Image image, BrightnessTable table, int resolution) {
+        int tileSize = image.getWidth() / resolution;
+        double[][] brightness = table.getTileBrightness(resolution);
+        check(brightness.length, image.getHeight() / tileSize, "tile rows");
+        for (int tileRow = 0; tileRow < brightness.length; tileRow++) {
+            check(brightness[tileRow].length, resolution, "tile columns");
+            for (int tileColumn = 0; tileColumn < resolution; tileColumn++) {
+                check(brightness[tileRow][tileColumn], pixelBrightness(image, tileRow * tileSize,
+                        tileColumn * tileSize, tileSize, tileSize), "tile");
+            }
+        }
+    }
+
+    /**
+     * The original brightness computation: a weighted sum over every Color of the region.
+     */
+    private static double pixelBrightness(Image image, int row, int column, int height, int width) {
+        double greyPixelSum = 0;
+        for (int rowIndex = row; rowIndex < row + height; rowIndex++) {
+            for (int columnIndex = column; columnIndex < column + width; columnIndex++) {
+                Color currentPixel = image.getPixel(rowIndex, columnIndex);
+                greyPixelSum += currentPixel.getRed() * GREY_SCALE_RED_FACTOR +
+                        currentPixel.getGreen() * GREY_SCALE_GREEN_FACTOR +
+                        currentPixel.getBlue() * GREY_SCALE_BLUE_FACTOR;
+            }
+        }
+        return greyPixelSum / (width * height * MAX_RGB_VALUE);
+    }
+
+    static Image randomImage(Random random, int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int index = 0; index < pixels.length; index++) {
+            pixels[index] = 0xFF000000 | random.nextInt(1 << 24);
+        }
+        return new Image(pixels, width, height);
+    }
+
+    private static void check(double actual, double expected, String what) {
+        if (Math.abs(actual - expected) > TOLERANCE) {
+            throw new AssertionError(String.format("%s: expected %s but was %s", what, expected, actual));
+        }
+    }
+
+    private static void check(int actual, int expected, String what) {
+        if (actual != expected) {
+            throw new AssertionError(String.format("%s: expected %d but was %d", what, expected, actual));
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package image;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that the virtual padding of {@link ImageEditor#padImageDimensions} reads exactly the
+ * pixels the original copy-based padding wrote: the source centered at the same offsets and
+ * white everywhere else, through every read path and in the tile brightness built on it.
+ * @author Salah Mahmied
+ */
+public class PaddingTest {
+
+    private static final Color WHITE = new Color(255, 255, 255);
+    private static final int SIDES_NUMBER = 2;
+    private static final int[][] SIZES = {{1, 1}, {3, 5}, {17, 16}, {16, 17}, {100, 37}, {33, 257}, {64, 64}};
+    private static final int PARTIAL_ROWS = 50;
+    private static final long SEED = 19;
+
+    public static void main(String[] args) {
+        Random random = new Random(SEED);
+        for (int[] size : SIZES) {
+            Image image = BrightnessTableTest.randomImage(random, size[0], size[1]);
+            Color[][] expected = copyPadding(image);
+            Image padded = ImageEditor.padImageDimensions(image);
+            int height = expected.length;
+            int width = expected[0].length;
+            check(padded.getWidth(), width, "width");
+            check(padded.getHeight(), height, "height");
+
+            int[] row = new int[width];
+            for (int rowIndex = 0; rowIndex < height; rowIndex++) {
+                padded.copyRow(rowIndex, 0, width, row);
+                for (int column = 0; column < width; column++) {
+                    int rgb = expected[rowIndex][column].getRGB();
+                    check(padded.getRGB(rowIndex, column), rgb, "getRGB");
+                    check(row[column], rgb, "copyRow");
+                    if (!padded.getPixel(rowIndex, column).equals(expected[rowIndex][column])) {
+                        throw new AssertionError(String.format("getPixel at %d,%d", rowIndex, column));
+                    }
+                    if (padded.getLuma(rowIndex, column) != Image.lumaOf(rgb)) {
+                        throw new AssertionError(String.format("getLuma at %d,%d", rowIndex, column));
+                    }
+                }
+            }
+            // Rows read from an offset cross the padding edges at different places
+            for (int index = 0; index < PARTIAL_ROWS; index++) {
+                int rowIndex = random.nextInt(height);
+                int column = random.nextInt(width);
+                int length = 1 + random.nextInt(width - column);
+                padded.copyRow(rowIndex, column, length, row);
+                for (int offset = 0; offset < length; offset++) {
+                    check(row[offset], expected[rowIndex][column + offset].getRGB(), "partial copyRow");
+                }
+            }
+
+            BrightnessTable paddedTable = new BrightnessTable(padded);
+            BrightnessTable copiedTable = new BrightnessTable(new Image(expected, width, height));
+            int minResolution = Math.max(1, width / height);
+            for (int resolution = minResolution; resolution <= width; resolution *= 2) {
+                if (!Arrays.deepEquals(paddedTable.getTileBrightness(resolution),
+                        copiedTable.getTileBrightness(resolution))) {
+                    throw new AssertionError(String.format("%dx%d tile brightness at resolution %d",
+                            size[0], size[1], resolution));
+                }
+            }
+        }
+        System.out.println("PaddingTest passed");
+    }
+
+    /**
+     * The original padding: the width is padded first by copying every row between white
+     * margins, then the height by copying every column between white margins.
+     */
+    private static Color[][] copyPadding(Image image) {
+        int newWidth = ImageEditor.getPaddedDimension(image.getWidth());
+        int left = (newWidth - image.getWidth()) / SIDES_NUMBER;
+        Color[][] widened = new Color[image.getHeight()][newWidth];
+        for (int row = 0; row < image.getHeight(); row++) {
+            for (int column = 0; column < newWidth; column++) {
+                widened[row][column] = column < left || column >= left + image.getWidth() ?
+                        WHITE : image.getPixel(row, column - left);
+            }
+        }
+
+        int newHeight = ImageEditor.getPaddedDimension(image.getHeight());
+        int top = (newHeight - image.getHeight()) / SIDES_NUMBER;
+        Color[][] padded = new Color[newHeight][newWidth];
+        for (int column = 0; column < newWidth; column++) {
+            for (int row = 0; row < newHeight; row++) {
+                padded[row][column] = row < top || row >= top + image.getHeight() ?
+                        WHITE : widened[row - top][column];
+            }
+        }
+        return padded;
+    }
+
+    private static void check(int actual, int expected, String what) {
+        if (actual != expected) {
+            throw new AssertionError(String.format("%s: expected %08x but was %08x", what, expected, actual));
+        }
+    }
+}
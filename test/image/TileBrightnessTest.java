@@ -0,0 +1,96 @@
+package image;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks that incremental tile brightness, which recomputes only the tiles that changed since
+ * the previous frame, equals a full recomputation of every frame and the summed-area table,
+ * over a frame sequence of still frames, small local changes and whole new frames.
+ * @author Salah Mahmied
+ */
+public class TileBrightnessTest {
+
+    private static final int WIDTH = 96;
+    private static final int HEIGHT = 72;
+    private static final int FRAMES = 60;
+    private static final int[] RESOLUTIONS = {1, 4, 16, 128};
+    private static final long SEED = 23;
+
+    public static void main(String[] args) {
+        int[][] frames = frameSequence(new Random(SEED), WIDTH, HEIGHT, FRAMES);
+        int paddedWidth = ImageEditor.getPaddedDimension(WIDTH);
+        int paddedHeight = ImageEditor.getPaddedDimension(HEIGHT);
+        for (int resolution : RESOLUTIONS) {
+            TileBrightness incremental = new TileBrightness(paddedWidth, paddedHeight, resolution, true);
+            TileBrightness full = new TileBrightness(paddedWidth, paddedHeight, resolution);
+            for (int frame = 0; frame < frames.length; frame++) {
+                Image image = ImageEditor.padImageDimensions(new Image(frames[frame].clone(), WIDTH, HEIGHT));
+                double[][] expected = new BrightnessTable(image).getTileBrightness(resolution);
+                if (!Arrays.deepEquals(incremental.calculate(image), expected) ||
+                        !Arrays.deepEquals(full.calculate(image), expected)) {
+                    throw new AssertionError(String.format("Frame %d at resolution %d differs from the table",
+                            frame, resolution));
+                }
+                boolean still = frame > 0 && Arrays.equals(frames[frame], frames[frame - 1]);
+                if (still && anyChanged(incremental.getChangedTiles())) {
+                    throw new AssertionError(String.format("Still frame %d at resolution %d recomputed tiles",
+                            frame, resolution));
+                }
+            }
+        }
+        System.out.println("TileBrightnessTest passed");
+    }
+
+    /**
+     * A random first frame followed by frames that repeat the previous one, change one pixel,
+     * move a small block, or replace every pixel.
+     */
+    public static int[][] frameSequence(Random random, int width, int height, int frames) {
+        int[][] sequence = new int[frames][];
+        sequence[0] = randomPixels(random, width * height);
+        for (int frame = 1; frame < frames; frame++) {
+            int[] pixels = sequence[frame - 1].clone();
+            switch (random.nextInt(4)) {
+                case 0:
+                    break;
+                case 1:
+                    pixels[random.nextInt(pixels.length)] = 0xFF000000 | random.nextInt(1 << 24);
+                    break;
+                case 2:
+                    int blockWidth = 1 + random.nextInt(width / 4);
+                    int blockHeight = 1 + random.nextInt(height / 4);
+                    int left = random.nextInt(width - blockWidth + 1);
+                    int top = random.nextInt(height - blockHeight + 1);
+                    int color = 0xFF000000 | random.nextInt(1 << 24);
+                    for (int row = top; row < top + blockHeight; row++) {
+                        Arrays.fill(pixels, row * width + left, row * width + left + blockWidth, color);
+                    }
+                    break;
+                default:
+                    pixels = randomPixels(random, width * height);
+            }
+            sequence[frame] = pixels;
+        }
+        return sequence;
+    }
+
+    private static int[] randomPixels(Random random, int count) {
+        int[] pixels = new int[count];
+        for (int index = 0; index < count; index++) {
+            pixels[index] = 0xFF000000 | random.nextInt(1 << 24);
+        }
+        return pixels;
+    }
+
+    private static boolean anyChanged(boolean[][] changedTiles) {
+        for (boolean[] row : changedTiles) {
+            for (boolean changed : row) {
+                if (changed) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
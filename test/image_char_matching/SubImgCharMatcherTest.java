@@ -0,0 +1,164 @@
+package image_char_matching;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Checks that the matcher's binary search returns exactly what the original linear scan over
+ * every character returned, including the lowest-ASCII tie break, while the charset changes
+ * one character at a time and in batches.
+ * @author Salah Mahmied
+ */
+public class SubImgCharMatcherTest {
+
+    private static final char FIRST_CHAR = ' ';
+    private static final char LAST_CHAR = '~';
+    private static final int GLYPH_PIXELS = 16 * 16;
+    private static final int CHANGES = 300;
+    private static final int OPERATIONS = 5;    // addChar, removeChar, addChars, removeChars, replaceChars
+    private static final int BATCH_SIZE = 12;
+    private static final int RANDOM_TARGETS = 200;
+    private static final long SEED = 6;
+
+    public static void main(String[] args) {
+        Random random = new Random(SEED);
+        Map<Character, Double> charBrightness = new HashMap<>();
+        for (char character = FIRST_CHAR; character <= LAST_CHAR; character++) {
+            charBrightness.put(character, glyphBrightness(character));
+        }
+
+        // A single character has no brightness range: both return '\0'
+        checkCharset(new char[] {'a'}, charBrightness, random);
+        checkCharset(new char[] {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'}, charBrightness, random);
+
+        char[] initial = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+        SubImgCharMatcher matcher = new SubImgCharMatcher(initial);
+        TreeSet<Character> charset = new TreeSet<>();
+        for (char character : initial) {
+            charset.add(character);
+        }
+        for (int change = 0; change < CHANGES; change++) {
+            int operation = random.nextInt(OPERATIONS);
+            if (operation < 2) {
+                char character = randomChar(random);
+                if (operation == 0) {
+                    matcher.addChar(character);
+                    charset.add(character);
+                } else {
+                    matcher.removeChar(character);
+                    charset.remove(character);
+                }
+            } else {
+                char[] characters = new char[1 + random.nextInt(BATCH_SIZE)];
+                for (int index = 0; index < characters.length; index++) {
+                    characters[index] = randomChar(random);
+                }
+                if (operation == 2) {
+                    matcher.addChars(characters);
+                } else if (operation == 3) {
+                    matcher.removeChars(characters);
+                } else {
+                    matcher.replaceChars(characters);
+                    charset.clear();
+                }
+                for (char character : characters) {
+                    if (operation == 3) {
+                        charset.remove(character);
+                    } else {
+                        charset.add(character);
+                    }
+                }
+            }
+            checkMatches(matcher, charset, charBrightness, random);
+        }
+        System.out.println("SubImgCharMatcherTest passed");
+    }
+
+    private static char randomChar(Random random) {
+        return (char) (FIRST_CHAR + random.nextInt(LAST_CHAR - FIRST_CHAR + 1));
+    }
+
+    private static void checkCharset(char[] chars, Map<Character, Double> charBrightness, Random random) {
+        TreeSet<Character> charset = new TreeSet<>();
+        for (char character : chars) {
+            charset.add(character);
+        }
+        checkMatches(new SubImgCharMatcher(chars), charset, charBrightness, random);
+    }
+
+    /**
+     * Compares the matcher with the linear scan at every character's own brightness, halfway
+     * between neighbouring brightness values (where ties occur), and at random brightness values.
+     */
+    private static void checkMatches(SubImgCharMatcher matcher, TreeSet<Character> charset,
+                                     Map<Character, Double> charBrightness, Random random) {
+        double minBrightness = Double.MAX_VALUE;
+        double maxBrightness = Double.MIN_VALUE;
+        for (char character : charset) {
+            minBrightness = Math.min(minBrightness, charBrightness.get(character));
+            maxBrightness = Math.max(maxBrightness, charBrightness.get(character));
+        }
+        List<Double> targets = new ArrayList<>();
+        TreeSet<Double> normalized = new TreeSet<>();
+        for (char character : charset) {
+            normalized.add((charBrightness.get(character) - minBrightness) / (maxBrightness - minBrightness));
+        }
+        Double previous = null;
+        for (double value : normalized) {
+            targets.add(value);
+            if (previous != null) {
+                targets.add((previous + value) / 2);
+            }
+            previous = value;
+        }
+        for (int index = 0; index < RANDOM_TARGETS; index++) {
+            targets.add(random.nextDouble() * 1.2 - 0.1);
+        }
+        for (double target : targets) {
+            char expected = linearScan(target, charset, charBrightness, minBrightness, maxBrightness);
+            char actual = matcher.getCharByImageBrightness(target);
+            if (actual != expected) {
+                throw new AssertionError(String.format("Brightness %s in %s: expected '%c' but was '%c'",
+                        target, charset, expected, actual));
+            }
+        }
+    }
+
+    /**
+     * The original matching: every character's normalized brightness is compared with the
+     * target, and the lowest ASCII value wins ties.
+     */
+    private static char linearScan(double targetBrightness, TreeSet<Character> charset,
+                                   Map<Character, Double> charBrightness, double minBrightness,
+                                   double maxBrightness) {
+        char closestChar = '\0';
+        double smallestDifference = Double.MAX_VALUE;
+        for (char character : charset) {
+            double normalizedBrightness = (charBrightness.get(character) - minBrightness) /
+                    (maxBrightness - minBrightness);
+            double difference = Math.abs(normalizedBrightness - targetBrightness);
+            if (difference < smallestDifference ||
+                    (difference == smallestDifference && character < closestChar)) {
+                closestChar = character;
+                smallestDifference = difference;
+            }
+        }
+        return closestChar;
+    }
+
+    private static double glyphBrightness(char character) {
+        int whitePixelCount = 0;
+        for (boolean[] row : CharConverter.convertToBoolArray(character)) {
+            for (boolean pixel : row) {
+                if (pixel) {
+                    whitePixelCount++;
+                }
+            }
+        }
+        return (double) whitePixelCount / GLYPH_PIXELS;
+    }
+}